@@ -0,0 +1,61 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binarization stage: the black matrix of a whole landscape frame from ZXing's
+ * {@link HybridBinarizer}, against {@link ReusableHybridBinarizer} with a workspace kept across
+ * frames.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BinarizerBenchmark {
+
+  @Param({"640x480", "1280x720", "1920x1080"})
+  public String size;
+
+  private final ReusableHybridBinarizer.Workspace mWorkspace =
+      new ReusableHybridBinarizer.Workspace();
+
+  private LuminanceSource mSource;
+
+  @Setup
+  public void setUp() throws IOException {
+    FrameCorpus.Entry entry = FrameCorpus.find("QR_CODE", size, "0", "0");
+    mSource = new PlanarYUVLuminanceSource(FrameCorpus.load(entry), entry.getWidth(),
+        entry.getHeight(), 0, 0, entry.getWidth(), entry.getHeight(), false);
+  }
+
+  @Benchmark
+  public BitMatrix stock() throws NotFoundException {
+    return new HybridBinarizer(mSource).getBlackMatrix();
+  }
+
+  @Benchmark
+  public BitMatrix reusable() throws NotFoundException {
+    return new ReusableHybridBinarizer(mSource, mWorkspace).getBlackMatrix();
+  }
+}
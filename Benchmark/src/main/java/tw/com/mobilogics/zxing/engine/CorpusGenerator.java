@@ -0,0 +1,210 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.Result;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the frames of {@link FrameCorpus} into the directory given as the only argument. The
+ * frames are drawn from the ZXing encoders without any randomness, so running it again reproduces
+ * the checked-in corpus byte for byte. Each frame is decoded once after drawing, and frames the
+ * engine cannot read are reported, since their decode benchmarks measure failed scans.
+ */
+public final class CorpusGenerator {
+
+  private static final int TABLE_LUMINANCE = 90;
+
+  private static final int PAPER_LUMINANCE = 205;
+
+  private static final int INK_LUMINANCE = 35;
+
+  private CorpusGenerator() {
+  }
+
+  public static void main(String[] args) throws IOException, WriterException {
+    if (args.length != 1) {
+      System.err.println("Usage: CorpusGenerator <output directory>");
+      System.exit(2);
+    }
+    File directory = new File(args[0]);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create " + directory);
+    }
+
+    Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.allOf(BarcodeFormat.class));
+    FrameDecoder.Worker worker = new FrameDecoder(hints).newWorker();
+
+    for (FrameCorpus.Entry entry : FrameCorpus.entries()) {
+      byte[] data = draw(entry);
+      OutputStream out = new GZIPOutputStream(
+          new FileOutputStream(new File(directory, entry.getFileName())));
+      try {
+        out.write(data);
+      } finally {
+        out.close();
+      }
+
+      Result rawResult = worker.decode(entry.newFrame(data));
+      boolean decoded = rawResult != null
+          && contentsOf(entry.getFormat()).equals(rawResult.getText());
+      System.out.println(entry + (decoded ? "" : " (not decoded)"));
+    }
+  }
+
+  static String contentsOf(BarcodeFormat format) {
+    switch (format) {
+      case QR_CODE:
+      case DATA_MATRIX:
+        return "https://github.com/shen0816/ZXingComponent";
+      case PDF_417:
+        return "ZXingComponent benchmark";
+      case CODE_128:
+        return "ZXC-0816-2014";
+      case EAN_13:
+        return "5901234123457";
+      default:
+        throw new IllegalArgumentException("No contents for " + format);
+    }
+  }
+
+  /** Returns the NV21 frame of {@code entry}, as the sensor would deliver it. */
+  static byte[] draw(FrameCorpus.Entry entry) throws WriterException {
+    int uprightWidth = entry.getUprightWidth();
+    int uprightHeight = entry.getUprightHeight();
+    byte[] upright = new byte[uprightWidth * uprightHeight];
+    Arrays.fill(upright, (byte) TABLE_LUMINANCE);
+    fill(upright, uprightWidth, uprightWidth / 10, uprightHeight / 10,
+        uprightWidth * 9 / 10, uprightHeight * 9 / 10, PAPER_LUMINANCE);
+    drawBarcode(upright, uprightWidth, uprightHeight, entry.getFormat());
+    if (entry.getBlur() > 0) {
+      boxBlur(upright, uprightWidth, uprightHeight, entry.getBlur());
+    }
+
+    int width = entry.getWidth();
+    int height = entry.getHeight();
+    byte[] data = new byte[width * height * 3 / 2];
+    // Turning the sensor image clockwise by the rotation gives the upright image.
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int uprightX;
+        int uprightY;
+        switch (entry.getRotation()) {
+          case 0:
+            uprightX = x;
+            uprightY = y;
+            break;
+          case 90:
+            uprightX = height - 1 - y;
+            uprightY = x;
+            break;
+          case 180:
+            uprightX = width - 1 - x;
+            uprightY = height - 1 - y;
+            break;
+          case 270:
+            uprightX = y;
+            uprightY = width - 1 - x;
+            break;
+          default:
+            throw new IllegalArgumentException("Rotation must be a multiple of 90");
+        }
+        data[y * width + x] = upright[uprightY * uprightWidth + uprightX];
+      }
+    }
+    // Grey chroma.
+    Arrays.fill(data, width * height, data.length, (byte) 128);
+    return data;
+  }
+
+  private static void drawBarcode(byte[] image, int width, int height, BarcodeFormat format)
+      throws WriterException {
+    Map<EncodeHintType, Object> hints = new EnumMap<EncodeHintType, Object>(EncodeHintType.class);
+    hints.put(EncodeHintType.MARGIN, 0);
+    BitMatrix matrix = new MultiFormatWriter().encode(contentsOf(format), format, 0, 0, hints);
+    // BitMatrix.getEnclosingRectangle() leaves out the last row and column in ZXing 3.1.0.
+    int symbolLeft = matrix.getWidth();
+    int symbolTop = matrix.getHeight();
+    int symbolRight = 0;
+    int symbolBottom = 0;
+    for (int y = 0; y < matrix.getHeight(); y++) {
+      for (int x = 0; x < matrix.getWidth(); x++) {
+        if (matrix.get(x, y)) {
+          symbolLeft = Math.min(symbolLeft, x);
+          symbolTop = Math.min(symbolTop, y);
+          symbolRight = Math.max(symbolRight, x + 1);
+          symbolBottom = Math.max(symbolBottom, y + 1);
+        }
+      }
+    }
+    int symbolWidth = symbolRight - symbolLeft;
+    int symbolHeight = symbolBottom - symbolTop;
+
+    boolean square = format == BarcodeFormat.QR_CODE || format == BarcodeFormat.DATA_MATRIX;
+    int targetWidth = square ? Math.min(width, height) * 2 / 5 : width * 7 / 10;
+    int scaleX = Math.max(1, targetWidth / symbolWidth);
+    // The 1D writers draw a single row; their bars get a quarter of the barcode width.
+    int scaleY = symbolHeight == 1 ? Math.max(1, symbolWidth * scaleX / 4) : scaleX;
+
+    int left = (width - symbolWidth * scaleX) / 2;
+    int top = (height - symbolHeight * scaleY) / 2;
+    for (int y = 0; y < symbolHeight; y++) {
+      for (int x = 0; x < symbolWidth; x++) {
+        if (matrix.get(symbolLeft + x, symbolTop + y)) {
+          fill(image, width, left + x * scaleX, top + y * scaleY,
+              left + (x + 1) * scaleX, top + (y + 1) * scaleY, INK_LUMINANCE);
+        }
+      }
+    }
+  }
+
+  private static void fill(byte[] image, int width, int left, int top, int right, int bottom,
+      int luminance) {
+    for (int y = top; y < bottom; y++) {
+      Arrays.fill(image, y * width + left, y * width + right, (byte) luminance);
+    }
+  }
+
+  /** Blurs {@code image} in place with a box of {@code 2 * radius + 1} pixels each way. */
+  private static void boxBlur(byte[] image, int width, int height, int radius) {
+    int[] line = new int[Math.max(width, height)];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        line[x] = image[y * width + x] & 0xff;
+      }
+      for (int x = 0; x < width; x++) {
+        image[y * width + x] = (byte) average(line, width, x, radius);
+      }
+    }
+    for (int x = 0; x < width; x++) {
+      for (int y = 0; y < height; y++) {
+        line[y] = image[y * width + x] & 0xff;
+      }
+      for (int y = 0; y < height; y++) {
+        image[y * width + x] = (byte) average(line, height, y, radius);
+      }
+    }
+  }
+
+  private static int average(int[] line, int length, int center, int radius) {
+    int sum = 0;
+    for (int i = center - radius; i <= center + radius; i++) {
+      sum += line[Math.min(Math.max(i, 0), length - 1)];
+    }
+    return sum / (2 * radius + 1);
+  }
+}
@@ -0,0 +1,94 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole decode of a corpus frame, from the NV21 data to the {@link Result}, with every format
+ * enabled as in a default {@code ZXingComponent}: at full resolution only, the same while
+ * recording {@link PipelineMetrics}, and with the half resolution first pass. Frames the engine
+ * cannot read measure the cost of a failed scan.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeBenchmark {
+
+  @Param({"QR_CODE", "DATA_MATRIX", "PDF_417", "CODE_128", "EAN_13"})
+  public String format;
+
+  @Param({"640x480", "1280x720", "1920x1080"})
+  public String size;
+
+  @Param({"0", "90"})
+  public String rotation;
+
+  @Param({"0", "2"})
+  public String blur;
+
+  private PreviewFrame mFrame;
+
+  private FrameDecoder.Worker mFullResolutionWorker;
+
+  private FrameDecoder.Worker mMeasuredWorker;
+
+  private FrameDecoder.Worker mDownscaledWorker;
+
+  @Setup
+  public void setUp() throws IOException {
+    FrameCorpus.Entry entry = FrameCorpus.find(format, size, rotation, blur);
+    mFrame = entry.newFrame(FrameCorpus.load(entry));
+
+    mFullResolutionWorker = new FrameDecoder(allFormats()).newWorker();
+    FrameDecoder measured = new FrameDecoder(allFormats());
+    measured.setMetrics(new PipelineMetrics());
+    mMeasuredWorker = measured.newWorker();
+    FrameDecoder downscaled = new FrameDecoder(allFormats());
+    downscaled.setDownscaledFirstPass(DownscaleRetryPolicy.ON_FAILURE,
+        FrameDecoder.DEFAULT_MIN_DOWNSCALE_SIZE);
+    mDownscaledWorker = downscaled.newWorker();
+  }
+
+  static Map<DecodeHintType, ?> allFormats() {
+    Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.allOf(BarcodeFormat.class));
+    return hints;
+  }
+
+  @Benchmark
+  public Result fullResolution() {
+    return mFullResolutionWorker.decode(mFrame);
+  }
+
+  @Benchmark
+  public Result fullResolutionWithMetrics() {
+    return mMeasuredWorker.decode(mFrame);
+  }
+
+  @Benchmark
+  public Result downscaledFirst() {
+    return mDownscaledWorker.decode(mFrame);
+  }
+}
@@ -0,0 +1,159 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The synthetic NV21 preview frames the benchmarks decode, checked in under
+ * {@code src/main/resources/corpus} and written by {@link CorpusGenerator}. Every frame holds one
+ * barcode in the middle of a sheet of paper, at every combination of symbology, preview size,
+ * sensor rotation and blur below. The rotation is the one the frame must be turned clockwise by
+ * to be upright, as in {@link PreviewFrame#getRotation()}.
+ */
+final class FrameCorpus {
+
+  static final BarcodeFormat[] FORMATS = {
+      BarcodeFormat.QR_CODE,
+      BarcodeFormat.DATA_MATRIX,
+      BarcodeFormat.PDF_417,
+      BarcodeFormat.CODE_128,
+      BarcodeFormat.EAN_13,
+  };
+
+  /** Preview sizes as the sensor delivers them, landscape. */
+  static final int[][] SIZES = {{640, 480}, {1280, 720}, {1920, 1080}};
+
+  static final int[] ROTATIONS = {0, 90};
+
+  /** Box blur radius in pixels, applied to the upright image. */
+  static final int[] BLURS = {0, 2};
+
+  private static final String RESOURCE_DIRECTORY = "/corpus/";
+
+  private FrameCorpus() {
+  }
+
+  static List<Entry> entries() {
+    List<Entry> entries = new ArrayList<Entry>();
+    for (BarcodeFormat format : FORMATS) {
+      for (int[] size : SIZES) {
+        for (int rotation : ROTATIONS) {
+          for (int blur : BLURS) {
+            entries.add(new Entry(format, size[0], size[1], rotation, blur));
+          }
+        }
+      }
+    }
+    return Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * Finds an entry from the strings JMH passes to {@code @Param} fields, such as
+   * {@code "QR_CODE"}, {@code "1920x1080"}, {@code "90"} and {@code "0"}.
+   */
+  static Entry find(String format, String size, String rotation, String blur) {
+    String[] dimensions = size.split("x");
+    return new Entry(BarcodeFormat.valueOf(format), Integer.parseInt(dimensions[0]),
+        Integer.parseInt(dimensions[1]), Integer.parseInt(rotation), Integer.parseInt(blur));
+  }
+
+  /** Reads the frame of {@code entry} from the checked-in corpus. */
+  static byte[] load(Entry entry) throws IOException {
+    InputStream in =
+        FrameCorpus.class.getResourceAsStream(RESOURCE_DIRECTORY + entry.getFileName());
+    if (in == null) {
+      throw new IOException("Not in the corpus: " + entry.getFileName()
+          + "; run the generateCorpus task");
+    }
+    try {
+      InputStream gzip = new GZIPInputStream(in);
+      int size = entry.getWidth() * entry.getHeight() * 3 / 2;
+      ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+      byte[] buffer = new byte[8192];
+      int count;
+      while ((count = gzip.read(buffer)) != -1) {
+        out.write(buffer, 0, count);
+      }
+      byte[] data = out.toByteArray();
+      if (data.length != size) {
+        throw new IOException("Truncated corpus frame: " + entry.getFileName());
+      }
+      return data;
+    } finally {
+      in.close();
+    }
+  }
+
+  static final class Entry {
+
+    private final BarcodeFormat mFormat;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final int mRotation;
+
+    private final int mBlur;
+
+    Entry(BarcodeFormat format, int width, int height, int rotation, int blur) {
+      mFormat = format;
+      mWidth = width;
+      mHeight = height;
+      mRotation = rotation;
+      mBlur = blur;
+    }
+
+    BarcodeFormat getFormat() {
+      return mFormat;
+    }
+
+    int getWidth() {
+      return mWidth;
+    }
+
+    int getHeight() {
+      return mHeight;
+    }
+
+    int getRotation() {
+      return mRotation;
+    }
+
+    int getBlur() {
+      return mBlur;
+    }
+
+    int getUprightWidth() {
+      return mRotation == 90 || mRotation == 270 ? mHeight : mWidth;
+    }
+
+    int getUprightHeight() {
+      return mRotation == 90 || mRotation == 270 ? mWidth : mHeight;
+    }
+
+    String getFileName() {
+      return String.format(Locale.US, "%s-%dx%d-r%d-b%d.nv21.gz",
+          mFormat.name().toLowerCase(Locale.US), mWidth, mHeight, mRotation, mBlur);
+    }
+
+    /** A frame of this entry cropped to the whole upright image. */
+    PreviewFrame newFrame(byte[] data) {
+      return new PreviewFrame(data, mWidth, mHeight, mRotation, false,
+          0, 0, getUprightWidth(), getUprightHeight());
+    }
+
+    @Override
+    public String toString() {
+      return getFileName();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package tw.com.mobilogics.zxing.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame setup in {@code onPreviewFrame}: what {@code Camera.getParameters()} and the debug
+ * log used to cost on every frame, against reading the preview size from a descriptor cached when
+ * the preview was configured. {@code Camera.getParameters()} cannot run off a device, so the
+ * former is approximated by its Java half: unflattening a parameter string of the size a typical
+ * back camera reports into a map, as {@code Camera.Parameters} does, and parsing the preview size
+ * out of it. The binder call and the flattening in the camera service come on top on a device.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameSetupBenchmark {
+
+  // Abridged from the parameters of a 2013 phone's back camera; real ones are often longer.
+  private static final String FLATTENED_PARAMETERS = "preview-size=1280x720;"
+      + "preview-size-values=1920x1080,1280x960,1280x720,800x480,768x432,720x480,640x480,"
+      + "576x432,480x320,384x288,352x288,320x240,240x160,176x144;"
+      + "preview-format=yuv420sp;"
+      + "preview-format-values=yuv420sp,yuv420p,yuv420p-adreno,nv12,yuv420sp-adreno;"
+      + "preview-frame-rate=30;preview-frame-rate-values=15,24,30;"
+      + "preview-fps-range=7500,30000;"
+      + "preview-fps-range-values=(7500,30000),(8000,30000),(30000,30000);"
+      + "picture-size=3264x2448;"
+      + "picture-size-values=3264x2448,3264x1836,2592x1944,2592x1458,2048x1536,1920x1080,"
+      + "1600x1200,1280x960,1280x768,1280x720,1024x768,800x600,800x480,720x480,640x480,"
+      + "352x288,320x240,176x144;"
+      + "picture-format=jpeg;picture-format-values=jpeg,bayer-mipi-10bggr;"
+      + "jpeg-quality=85;jpeg-thumbnail-size-values=512x288,480x288,256x154,432x288,320x240,"
+      + "176x144,0x0;jpeg-thumbnail-width=512;jpeg-thumbnail-height=384;"
+      + "jpeg-thumbnail-quality=90;"
+      + "focus-mode=continuous-picture;"
+      + "focus-mode-values=auto,infinity,normal,macro,continuous-picture,continuous-video;"
+      + "focus-areas=(0,0,0,0,0);max-num-focus-areas=1;"
+      + "focus-distances=0.100000,0.150000,0.200000;"
+      + "flash-mode=off;flash-mode-values=off,auto,on,torch;"
+      + "whitebalance=auto;whitebalance-values=auto,incandescent,fluorescent,daylight,"
+      + "cloudy-daylight;"
+      + "effect=none;effect-values=none,mono,negative,solarize,sepia,posterize,whiteboard,"
+      + "blackboard,aqua,emboss,sketch,neon;"
+      + "antibanding=auto;antibanding-values=off,50hz,60hz,auto;"
+      + "scene-mode=auto;scene-mode-values=auto,asd,action,portrait,landscape,night,"
+      + "night-portrait,theatre,beach,snow,sunset,steadyphoto,fireworks,sports,party,"
+      + "candlelight,backlight,flowers,AR,hdr;"
+      + "exposure-compensation=0;max-exposure-compensation=12;min-exposure-compensation=-12;"
+      + "exposure-compensation-step=0.166667;"
+      + "auto-exposure-lock=false;auto-exposure-lock-supported=true;"
+      + "auto-whitebalance-lock=false;auto-whitebalance-lock-supported=true;"
+      + "metering-areas=(0,0,0,0,0);max-num-metering-areas=1;"
+      + "zoom=0;max-zoom=99;zoom-supported=true;smooth-zoom-supported=false;"
+      + "zoom-ratios=100,102,104,107,109,112,114,117,120,123,125,128,131,135,138,141,144,148,"
+      + "151,155,158,162,166,170,174,178,182,186,190,195,200,204,209,214,219,224,229,235,240,"
+      + "246,251,257,263,270,276,282,289,296,303,310,317,324,332,340,348,356,364,373,381,390,"
+      + "400;"
+      + "video-size=1920x1080;video-size-values=1920x1080,1280x720,800x480,720x480,640x480,"
+      + "480x320,352x288,320x240,176x144;"
+      + "preferred-preview-size-for-video=1920x1080;"
+      + "video-stabilization=false;video-stabilization-supported=true;"
+      + "video-snapshot-supported=true;recording-hint=false;"
+      + "horizontal-view-angle=62.9;vertical-view-angle=49.4;focal-length=3.97;"
+      + "max-num-detected-faces-hw=5;max-num-detected-faces-sw=0;"
+      + "iso=auto;iso-values=auto,ISO_HJR,ISO100,ISO200,ISO400,ISO800,ISO1600;"
+      + "denoise=denoise-on;denoise-values=denoise-off,denoise-on;"
+      + "sharpness=12;max-sharpness=36;contrast=5;max-contrast=10;saturation=5;"
+      + "max-saturation=10;skinToneEnhancement=0;";
+
+  // Stands in for the fields of the descriptor, which is an Android class.
+  private int mWidth = 1280;
+
+  private int mHeight = 720;
+
+  /** What {@code onPreviewFrame} did before: fetch the parameters, then log the frame size. */
+  @Benchmark
+  public int parametersAndLog() {
+    Map<String, String> parameters = unflatten(FLATTENED_PARAMETERS);
+    String size = parameters.get("preview-size");
+    int separator = size.indexOf('x');
+    int width = Integer.parseInt(size.substring(0, separator));
+    int height = Integer.parseInt(size.substring(separator + 1));
+    // Log.d formats its message even when logcat discards it.
+    String message = String.format("onPreviewFrame width : %d, height : %d", width, height);
+    return width + height + message.length();
+  }
+
+  /** What it does now with logging off: read the cached descriptor. */
+  @Benchmark
+  public int cachedDescriptor() {
+    return mWidth + mHeight;
+  }
+
+  /** Splits a flattened parameter string the way {@code Camera.Parameters.unflatten} does. */
+  private static Map<String, String> unflatten(String flattened) {
+    Map<String, String> parameters = new LinkedHashMap<String, String>(64);
+    int start = 0;
+    while (start < flattened.length()) {
+      int end = flattened.indexOf(';', start);
+      if (end < 0) {
+        end = flattened.length();
+      }
+      int equals = flattened.indexOf('=', start);
+      if (equals >= 0 && equals < end) {
+        parameters.put(flattened.substring(start, equals),
+            flattened.substring(equals + 1, end));
+      }
+      start = end + 1;
+    }
+    return parameters;
+  }
+}
@@ -0,0 +1,89 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rotation and cropping stages together: getting the luminance matrix of the decoded region of a
+ * portrait frame through {@link RotatedLuminanceSource}, against rotating the whole frame first
+ * and cropping it with a {@link PlanarYUVLuminanceSource}. With {@code crop=framing} the region
+ * is the middle half of the upright frame each way, as with a view finder; with {@code full} it
+ * is the whole frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LuminanceSourceBenchmark {
+
+  @Param({"640x480", "1280x720", "1920x1080"})
+  public String size;
+
+  @Param({"full", "framing"})
+  public String crop;
+
+  private final YPlaneRotator mRotator = new YPlaneRotator();
+
+  private FrameCorpus.Entry mEntry;
+
+  private byte[] mData;
+
+  private int mLeft;
+
+  private int mTop;
+
+  private int mCropWidth;
+
+  private int mCropHeight;
+
+  @Setup
+  public void setUp() throws IOException {
+    mEntry = FrameCorpus.find("QR_CODE", size, "90", "0");
+    mData = FrameCorpus.load(mEntry);
+    int uprightWidth = mEntry.getUprightWidth();
+    int uprightHeight = mEntry.getUprightHeight();
+    if ("framing".equals(crop)) {
+      mLeft = uprightWidth / 4;
+      mTop = uprightHeight / 4;
+      mCropWidth = uprightWidth / 2;
+      mCropHeight = uprightHeight / 2;
+    } else {
+      mCropWidth = uprightWidth;
+      mCropHeight = uprightHeight;
+    }
+  }
+
+  @Benchmark
+  public byte[] rotatedView() {
+    LuminanceSource source = new RotatedLuminanceSource(mData, mEntry.getWidth(),
+        mEntry.getHeight(), mEntry.getRotation(), false, mLeft, mTop, mCropWidth, mCropHeight,
+        mRotator);
+    return source.getMatrix();
+  }
+
+  @Benchmark
+  public byte[] rotateThenCrop() {
+    byte[] rotated = RotationBenchmark.rotateNaively(mData, mEntry.getWidth(), mEntry.getHeight(),
+        mEntry.getRotation());
+    LuminanceSource source = new PlanarYUVLuminanceSource(rotated, mEntry.getUprightWidth(),
+        mEntry.getUprightHeight(), mLeft, mTop, mCropWidth, mCropHeight, false);
+    return source.getMatrix();
+  }
+}
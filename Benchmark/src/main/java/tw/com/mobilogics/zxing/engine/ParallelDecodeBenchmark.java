@@ -0,0 +1,72 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames per second of one decode thread scanning 1080p portrait frames with every format, as the
+ * number of reader threads of {@link ParallelReader} grows. {@code readerThreads=0} runs the
+ * readers one after the other on the decode thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParallelDecodeBenchmark {
+
+  @Param({"QR_CODE", "PDF_417", "CODE_128"})
+  public String format;
+
+  @Param({"0", "1", "2", "4"})
+  public int readerThreads;
+
+  private PreviewFrame mFrame;
+
+  private ExecutorService mExecutor;
+
+  private FrameDecoder.Worker mWorker;
+
+  @Setup
+  public void setUp() throws IOException {
+    FrameCorpus.Entry entry = FrameCorpus.find(format, "1920x1080", "90", "0");
+    mFrame = entry.newFrame(FrameCorpus.load(entry));
+
+    FrameDecoder frameDecoder = new FrameDecoder(DecodeBenchmark.allFormats());
+    if (readerThreads > 0) {
+      mExecutor = Executors.newFixedThreadPool(readerThreads);
+      frameDecoder.setParallelExecutor(mExecutor);
+    }
+    mWorker = frameDecoder.newWorker();
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (mExecutor != null) {
+      mExecutor.shutdownNow();
+    }
+  }
+
+  @Benchmark
+  public Result decode() {
+    return mWorker.decode(mFrame);
+  }
+}
@@ -0,0 +1,80 @@
+package tw.com.mobilogics.zxing.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rotation stage: turning a whole portrait frame upright with {@link YPlaneRotator}, against the
+ * per-pixel loop into a new NV21-sized array that {@code onPreviewFrame} used before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RotationBenchmark {
+
+  @Param({"640x480", "1280x720", "1920x1080"})
+  public String size;
+
+  @Param({"90", "270"})
+  public int rotation;
+
+  private final YPlaneRotator mRotator = new YPlaneRotator();
+
+  private byte[] mData;
+
+  private int mWidth;
+
+  private int mHeight;
+
+  @Setup
+  public void setUp() throws IOException {
+    FrameCorpus.Entry entry = FrameCorpus.find("QR_CODE", size, "90", "0");
+    mData = FrameCorpus.load(entry);
+    mWidth = entry.getWidth();
+    mHeight = entry.getHeight();
+  }
+
+  @Benchmark
+  public byte[] tiledRotator() {
+    return mRotator.rotate(mData, mWidth, mHeight, 0, 0, mWidth, mHeight, rotation, false);
+  }
+
+  @Benchmark
+  public byte[] naiveLoop() {
+    return rotateNaively(mData, mWidth, mHeight, rotation);
+  }
+
+  /** The rotation {@code onPreviewFrame} did before the Y plane rotator, for 90 and 270. */
+  static byte[] rotateNaively(byte[] data, int width, int height, int rotation) {
+    byte[] rotatedData = new byte[data.length];
+    if (rotation == 90) {
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          rotatedData[x * height + height - y - 1] = data[x + y * width];
+        }
+      }
+    } else {
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          rotatedData[(width - x - 1) * height + y] = data[x + y * width];
+        }
+      }
+    }
+    return rotatedData;
+  }
+}
@@ -0,0 +1,382 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.Result;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves decoding off the camera callback thread. Frames are handed to the decode threads through a
+ * one-slot queue where the latest frame always wins, and results are handed back through the
+ * result executor given to the constructor.
+ *
+ * <p>With more than one frame in flight (see {@link #setMaxFramesInFlight(int)}) consecutive frames
+ * are decoded concurrently, each by its own thread, so decodes slower than the frame interval no
+ * longer cap the throughput. Completions are put back into frame order on the main thread, and
+ * once a result is delivered the newer frames are discarded: those still waiting are dropped, and
+ * those already decoding run to the end but their results are dropped, so the frames that saw the
+ * same barcode produce a single result.
+ *
+ * <p>In continuous mode (see {@link #setContinuous(boolean)}) every frame is searched for several
+ * barcodes and nothing is cancelled; instead a {@link DuplicateFilter} lets each barcode through
+ * once until it has been out of sight for a while.
+ *
+ * <p>"The main thread" below is the single thread the result executor runs its tasks on; on Android
+ * that is the UI thread. Apart from {@link #getDroppedFrameCount(Stage)}, all methods must be
+ * called from that thread.
+ */
+public class DecodePipeline {
+
+  public enum Stage {
+    /**
+     * Frames replaced in the hand-off queue by a newer frame, discarded while stopped, or discarded
+     * because a result had just been delivered.
+     */
+    DELIVERY,
+    /**
+     * Frames whose decode finished after the scanning session they belonged to had ended, or after
+     * a result from another frame had been delivered.
+     */
+    DECODE,
+    /**
+     * Results that reached the main thread after the scanning session had ended, or after a result
+     * from another frame had been delivered.
+     */
+    DISPATCH
+  }
+
+  public interface Listener {
+
+    /** Called on the main thread. */
+    void onResult(Result rawResult);
+
+    /**
+     * Called on any thread once the pipeline no longer reads the frame's data, whether the frame
+     * was decoded or dropped.
+     */
+    void onFrameReleased(PreviewFrame frame);
+  }
+
+  private static final Logger LOGGER = Logger.getLogger(DecodePipeline.class.getName());
+
+  private final BlockingQueue<PreviewFrame> mPendingFrames =
+      new ArrayBlockingQueue<PreviewFrame>(1);
+
+  private final AtomicLongArray mDroppedFrames = new AtomicLongArray(Stage.values().length);
+
+  private final Executor mResultExecutor;
+
+  /** Completions that arrived ahead of an older frame, by sequence; main thread only. */
+  private final Map<Long, Result[]> mEarlyCompletions = new HashMap<Long, Result[]>();
+
+  /** When each frame still pending was submitted, by sequence, while metrics are recorded. */
+  private final Map<Long, Long> mSubmittedNanos = new HashMap<Long, Long>();
+
+  private final DuplicateFilter mDuplicateFilter = new DuplicateFilter();
+
+  private final FrameDecoder mFrameDecoder;
+
+  private final Listener mListener;
+
+  private ExecutorService mDecodeExecutor;
+
+  private int mMaxFramesInFlight = 1;
+
+  private long mNextSequence = 0;
+
+  private long mNextCompletion = 0;
+
+  private volatile long mSessionStart = Long.MAX_VALUE;
+
+  private volatile boolean isContinuous = false;
+
+  private volatile PipelineMetrics mMetrics = null;
+
+  /**
+   * @param resultExecutor runs every completion and listener callback on the main thread, for
+   *     example by posting to a handler of the main looper
+   */
+  public DecodePipeline(FrameDecoder frameDecoder, Listener listener, Executor resultExecutor) {
+    mFrameDecoder = frameDecoder;
+    mListener = listener;
+    mResultExecutor = resultExecutor;
+  }
+
+  /**
+   * Sets how many frames may be decoded at once, one decode thread each. The camera needs at
+   * least two more preview buffers than this to keep delivering frames meanwhile.
+   */
+  public void setMaxFramesInFlight(int maxFramesInFlight) {
+    if (maxFramesInFlight < 1) {
+      throw new IllegalArgumentException("At least one frame must be in flight");
+    }
+    if (maxFramesInFlight == mMaxFramesInFlight) {
+      return;
+    }
+    mMaxFramesInFlight = maxFramesInFlight;
+    if (mDecodeExecutor != null) {
+      // Decodes already running finish on the old threads and still complete in order.
+      mDecodeExecutor.shutdownNow();
+      mDecodeExecutor = null;
+      startDecodeThreads();
+    }
+  }
+
+  /** Frames decoded after this call look for several barcodes each when enabled. */
+  public void setContinuous(boolean continuous) {
+    isContinuous = continuous;
+  }
+
+  /** How long a barcode must be out of sight before continuous mode reports it again. */
+  public void setDuplicateWindow(long windowMillis) {
+    mDuplicateFilter.setWindowMillis(windowMillis);
+  }
+
+  /**
+   * Records the time frames spend waiting for a decode thread and for the main thread, and the
+   * frames and results that go through, into {@code metrics}; null stops recording. Give the same
+   * metrics to {@link FrameDecoder#setMetrics(PipelineMetrics)} for the decode stages.
+   */
+  public void setMetrics(PipelineMetrics metrics) {
+    mSubmittedNanos.clear();
+    mMetrics = metrics;
+  }
+
+  public void start() {
+    if (mDecodeExecutor == null) {
+      startDecodeThreads();
+    }
+    mDuplicateFilter.clear();
+    mSessionStart = mNextSequence;
+  }
+
+  private void startDecodeThreads() {
+    mDecodeExecutor = Executors.newFixedThreadPool(mMaxFramesInFlight, new ThreadFactory() {
+      private int mCount = 0;
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        return new Thread(runnable, "ZXingComponent-decode-" + (++mCount));
+      }
+    });
+    for (int i = 0; i < mMaxFramesInFlight; i++) {
+      mDecodeExecutor.execute(new DecodeLoop(mDecodeExecutor, mFrameDecoder.newWorker()));
+    }
+  }
+
+  public void stop() {
+    mSessionStart = Long.MAX_VALUE;
+    discardPendingFrames();
+  }
+
+  /** Stops the decode thread. The pipeline can be started again afterwards. */
+  public void shutdown() {
+    stop();
+    if (mDecodeExecutor != null) {
+      mDecodeExecutor.shutdownNow();
+      mDecodeExecutor = null;
+    }
+  }
+
+  public void submit(PreviewFrame frame) {
+    frame.setSequence(mNextSequence++);
+    PipelineMetrics metrics = mMetrics;
+    if (metrics != null) {
+      long now = System.nanoTime();
+      frame.setSubmittedNanos(now);
+      mSubmittedNanos.put(frame.getSequence(), now);
+      metrics.recordSubmitted();
+    }
+    if (!isCurrent(frame)) {
+      drop(frame, Stage.DELIVERY);
+      return;
+    }
+    while (!mPendingFrames.offer(frame)) {
+      PreviewFrame stale = mPendingFrames.poll();
+      if (stale != null) {
+        drop(stale, Stage.DELIVERY);
+      }
+    }
+  }
+
+  public long getDroppedFrameCount(Stage stage) {
+    return mDroppedFrames.get(stage.ordinal());
+  }
+
+  private boolean isCurrent(PreviewFrame frame) {
+    return isCurrent(frame.getSequence());
+  }
+
+  private boolean isCurrent(long sequence) {
+    return sequence >= mSessionStart;
+  }
+
+  private void discardPendingFrames() {
+    PreviewFrame frame;
+    while ((frame = mPendingFrames.poll()) != null) {
+      drop(frame, Stage.DELIVERY);
+    }
+  }
+
+  private void drop(PreviewFrame frame, Stage stage) {
+    countDropped(stage);
+    mListener.onFrameReleased(frame);
+    complete(frame.getSequence(), null);
+  }
+
+  private void countDropped(Stage stage) {
+    mDroppedFrames.incrementAndGet(stage.ordinal());
+    PipelineMetrics metrics = mMetrics;
+    if (metrics != null) {
+      metrics.recordDropped();
+    }
+  }
+
+  private void postCompletion(final long sequence, final Result[] rawResults) {
+    final long postedNanos = mMetrics != null ? System.nanoTime() : 0;
+    mResultExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        PipelineMetrics metrics = mMetrics;
+        if (metrics != null && postedNanos != 0) {
+          metrics.recordStage(PipelineMetrics.Stage.DISPATCH, System.nanoTime() - postedNanos);
+        }
+        complete(sequence, rawResults);
+      }
+    });
+  }
+
+  /**
+   * Called exactly once for every submitted frame, with its results or null. Completions are
+   * handled in sequence order; a completion that arrives early waits for the older ones.
+   */
+  private void complete(long sequence, Result[] rawResults) {
+    if (sequence != mNextCompletion) {
+      mEarlyCompletions.put(sequence, rawResults);
+      return;
+    }
+    handleCompletion(mNextCompletion++, rawResults);
+    while (mEarlyCompletions.containsKey(mNextCompletion)) {
+      Result[] early = mEarlyCompletions.remove(mNextCompletion);
+      handleCompletion(mNextCompletion++, early);
+    }
+  }
+
+  private void handleCompletion(long sequence, Result[] rawResults) {
+    Long submittedNanos = mSubmittedNanos.isEmpty() ? null : mSubmittedNanos.remove(sequence);
+    if (rawResults == null || rawResults.length == 0) {
+      return;
+    }
+    if (!isCurrent(sequence)) {
+      countDropped(Stage.DISPATCH);
+      return;
+    }
+    if (isContinuous) {
+      long now = System.nanoTime() / 1000000L;
+      // The listener may stop the session part way through.
+      for (int i = 0; i < rawResults.length && isCurrent(sequence); i++) {
+        if (mDuplicateFilter.isNew(rawResults[i], now)) {
+          deliver(rawResults[i], submittedNanos);
+        }
+      }
+      return;
+    }
+    // Every frame already submitted belongs to the old session now, so the frames still in
+    // flight cannot deliver the same barcode a second time.
+    mSessionStart = mNextSequence;
+    discardPendingFrames();
+    deliver(rawResults[0], submittedNanos);
+  }
+
+  private void deliver(Result rawResult, Long submittedNanos) {
+    PipelineMetrics metrics = mMetrics;
+    if (metrics != null && submittedNanos != null) {
+      metrics.recordResult(System.nanoTime() - submittedNanos);
+    }
+    mListener.onResult(rawResult);
+  }
+
+  private class DecodeLoop implements Runnable {
+
+    private final Executor mExecutor;
+
+    private final FrameDecoder.Worker mWorker;
+
+    DecodeLoop(Executor executor, FrameDecoder.Worker worker) {
+      mExecutor = executor;
+      mWorker = worker;
+    }
+
+    @Override
+    public void run() {
+      try {
+        decodeFrames();
+      } catch (Error e) {
+        // The pool replaces the thread the error ends, but has no loop to give the new thread.
+        try {
+          mExecutor.execute(this);
+        } catch (RejectedExecutionException rejected) {
+          // Shut down meanwhile.
+        }
+        throw e;
+      }
+    }
+
+    private void decodeFrames() {
+      while (!Thread.currentThread().isInterrupted()) {
+        PreviewFrame frame;
+        try {
+          frame = mPendingFrames.take();
+        } catch (InterruptedException e) {
+          return;
+        }
+        PipelineMetrics metrics = mMetrics;
+        if (metrics != null && frame.getSubmittedNanos() != 0) {
+          metrics.recordStage(PipelineMetrics.Stage.ARRIVAL,
+              System.nanoTime() - frame.getSubmittedNanos());
+        }
+
+        Result[] rawResults = null;
+        try {
+          if (isContinuous) {
+            rawResults = mWorker.decodeMultiple(frame);
+          } else {
+            Result rawResult = mWorker.decode(frame);
+            rawResults = rawResult != null ? new Result[] {rawResult} : null;
+          }
+        } catch (RuntimeException e) {
+          // One bad frame must not end the decode thread; the next frame gets a fresh try.
+          LOGGER.log(Level.WARNING, "Decoding frame " + frame.getSequence() + " failed", e);
+        } finally {
+          // Runs even when an Error ends the thread, or later frames would wait for this one
+          // forever and its buffer would never go back to the camera.
+          release(frame, rawResults);
+        }
+      }
+    }
+
+    private void release(PreviewFrame frame, Result[] rawResults) {
+      try {
+        mListener.onFrameReleased(frame);
+      } catch (RuntimeException e) {
+        LOGGER.log(Level.WARNING, "Releasing frame " + frame.getSequence() + " failed", e);
+      } finally {
+        if (!isCurrent(frame)) {
+          countDropped(Stage.DECODE);
+          rawResults = null;
+        }
+        postCompletion(frame.getSequence(), rawResults);
+      }
+    }
+  }
+}
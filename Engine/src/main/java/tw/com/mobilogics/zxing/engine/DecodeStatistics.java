@@ -0,0 +1,150 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.BarcodeFormat;
+
+/**
+ * Success rate and decode time of the readers run by a {@link FrameDecoder}, split into attempts
+ * with a single likely format (see {@link FrameDecoder#setAdaptiveReaderOrder(boolean)}) and
+ * full scans with every configured format. The half resolution pass (see
+ * {@link FrameDecoder#setDownscaledFirstPass(DownscaleRetryPolicy, int)}) and decodes in the
+ * tracked region (see {@link FrameDecoder#setRegionTracking(boolean)}) are counted on their own,
+ * and also in the attempts and full scans they run. Updated from the decode thread; safe to read
+ * from any thread.
+ */
+public class DecodeStatistics {
+
+  private final int[] mAttempts = new int[BarcodeFormat.values().length];
+
+  private final int[] mHits = new int[BarcodeFormat.values().length];
+
+  private final long[] mDecodeNanos = new long[BarcodeFormat.values().length];
+
+  private int mFullScanAttempts = 0;
+
+  private int mFullScanHits = 0;
+
+  private long mFullScanNanos = 0;
+
+  private int mDownscaledPasses = 0;
+
+  private int mDownscaledHits = 0;
+
+  private long mDownscaledNanos = 0;
+
+  private int mTrackedPasses = 0;
+
+  private int mTrackedHits = 0;
+
+  private long mTrackedNanos = 0;
+
+  synchronized void recordAttempt(BarcodeFormat format, boolean hit, long nanos) {
+    mAttempts[format.ordinal()]++;
+    if (hit) {
+      mHits[format.ordinal()]++;
+    }
+    mDecodeNanos[format.ordinal()] += nanos;
+  }
+
+  synchronized void recordFullScan(boolean hit, long nanos) {
+    mFullScanAttempts++;
+    if (hit) {
+      mFullScanHits++;
+    }
+    mFullScanNanos += nanos;
+  }
+
+  synchronized void recordDownscaledPass(boolean sufficient, long nanos) {
+    mDownscaledPasses++;
+    if (sufficient) {
+      mDownscaledHits++;
+    }
+    mDownscaledNanos += nanos;
+  }
+
+  synchronized void recordTrackedPass(boolean hit, long nanos) {
+    mTrackedPasses++;
+    if (hit) {
+      mTrackedHits++;
+    }
+    mTrackedNanos += nanos;
+  }
+
+  /** Number of frames on which only the reader for {@code format} was tried first. */
+  public synchronized int getAttempts(BarcodeFormat format) {
+    return mAttempts[format.ordinal()];
+  }
+
+  /** Share of the attempts with only {@code format} that produced a result, from 0 to 1. */
+  public synchronized double getHitRate(BarcodeFormat format) {
+    int attempts = mAttempts[format.ordinal()];
+    return attempts == 0 ? 0 : (double) mHits[format.ordinal()] / attempts;
+  }
+
+  /** Mean time of an attempt with only {@code format}, in nanoseconds. */
+  public synchronized long getMeanDecodeNanos(BarcodeFormat format) {
+    int attempts = mAttempts[format.ordinal()];
+    return attempts == 0 ? 0 : mDecodeNanos[format.ordinal()] / attempts;
+  }
+
+  public synchronized int getFullScanAttempts() {
+    return mFullScanAttempts;
+  }
+
+  public synchronized double getFullScanHitRate() {
+    return mFullScanAttempts == 0 ? 0 : (double) mFullScanHits / mFullScanAttempts;
+  }
+
+  /** Mean time of a scan with every configured format, in nanoseconds. */
+  public synchronized long getMeanFullScanNanos() {
+    return mFullScanAttempts == 0 ? 0 : mFullScanNanos / mFullScanAttempts;
+  }
+
+  /** Number of frames decoded at half resolution first. */
+  public synchronized int getDownscaledPasses() {
+    return mDownscaledPasses;
+  }
+
+  /**
+   * Share of the frames decoded at half resolution first that needed no full resolution retry,
+   * from 0 to 1.
+   */
+  public synchronized double getDownscaledHitRate() {
+    return mDownscaledPasses == 0 ? 0 : (double) mDownscaledHits / mDownscaledPasses;
+  }
+
+  /** Mean time of a half resolution pass, downsampling included, in nanoseconds. */
+  public synchronized long getMeanDownscaledNanos() {
+    return mDownscaledPasses == 0 ? 0 : mDownscaledNanos / mDownscaledPasses;
+  }
+
+  /** Number of frames decoded only in the region around the last barcode found. */
+  public synchronized int getTrackedPasses() {
+    return mTrackedPasses;
+  }
+
+  public synchronized double getTrackedHitRate() {
+    return mTrackedPasses == 0 ? 0 : (double) mTrackedHits / mTrackedPasses;
+  }
+
+  /** Mean time of a decode in the tracked region, in nanoseconds. */
+  public synchronized long getMeanTrackedNanos() {
+    return mTrackedPasses == 0 ? 0 : mTrackedNanos / mTrackedPasses;
+  }
+
+  public synchronized void reset() {
+    for (int i = 0; i < mAttempts.length; i++) {
+      mAttempts[i] = 0;
+      mHits[i] = 0;
+      mDecodeNanos[i] = 0;
+    }
+    mFullScanAttempts = 0;
+    mFullScanHits = 0;
+    mFullScanNanos = 0;
+    mDownscaledPasses = 0;
+    mDownscaledHits = 0;
+    mDownscaledNanos = 0;
+    mTrackedPasses = 0;
+    mTrackedHits = 0;
+    mTrackedNanos = 0;
+  }
+}
@@ -0,0 +1,18 @@
+package tw.com.mobilogics.zxing.engine;
+
+/**
+ * When a frame decoded at half resolution first (see
+ * {@link FrameDecoder#setDownscaledFirstPass(DownscaleRetryPolicy, int)}) is decoded again at full
+ * resolution.
+ */
+public enum DownscaleRetryPolicy {
+
+  /** Only when the half resolution pass found nothing. */
+  ON_FAILURE,
+
+  /**
+   * Also when it found something, in continuous scanning, since codes too small for half
+   * resolution may share the frame with the ones found. Same as {@link #ON_FAILURE} otherwise.
+   */
+  ON_FAILURE_OR_PARTIAL
+}
@@ -0,0 +1,77 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the barcodes seen recently, keyed by text and format, so that continuous scanning
+ * reports each one once. A barcode is reported again only after it has been out of sight for the
+ * whole window. Not thread safe.
+ */
+class DuplicateFilter {
+
+  static final long DEFAULT_WINDOW_MILLIS = 5000;
+
+  // In access order, so the barcode seen longest ago comes first.
+  private final Map<Key, Long> mLastSeen = new LinkedHashMap<Key, Long>(16, 0.75f, true);
+
+  private long mWindowMillis = DEFAULT_WINDOW_MILLIS;
+
+  void setWindowMillis(long windowMillis) {
+    if (windowMillis < 0) {
+      throw new IllegalArgumentException("Window must not be negative");
+    }
+    mWindowMillis = windowMillis;
+  }
+
+  void clear() {
+    mLastSeen.clear();
+  }
+
+  /**
+   * Records a sighting of {@code result} at {@code nowMillis} and returns whether it had not been
+   * seen within the window before.
+   */
+  boolean isNew(Result result, long nowMillis) {
+    evictOlderThan(nowMillis - mWindowMillis);
+    return mLastSeen.put(new Key(result), nowMillis) == null;
+  }
+
+  private void evictOlderThan(long millis) {
+    Iterator<Long> iterator = mLastSeen.values().iterator();
+    while (iterator.hasNext() && iterator.next() < millis) {
+      iterator.remove();
+    }
+  }
+
+  private static class Key {
+
+    private final String mText;
+
+    private final BarcodeFormat mFormat;
+
+    Key(Result result) {
+      mText = result.getText();
+      mFormat = result.getBarcodeFormat();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return mFormat == other.mFormat
+          && (mText == null ? other.mText == null : mText.equals(other.mText));
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (mText == null ? 0 : mText.hashCode()) + mFormat.hashCode();
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package tw.com.mobilogics.zxing.engine;
+
+/**
+ * Decides when a camera should turn its torch on and lock auto exposure and white balance while
+ * scanning. The torch goes on once the preview has stayed dark for {@link #DARK_NANOS}, and off
+ * again only if the lit scene saturates, after which it stays off until {@link #reset()}, so it
+ * never flickers. Exposure and white balance lock once a code has been read, which keeps the
+ * camera from re-metering on the bright or dark label it is pointed at, and unlock after
+ * {@link #CODE_HOLD_NANOS} without a code.
+ *
+ * <p>Luminance is the sampled mean of {@link FrameQualityGate.Sample#getLuminance}. All methods
+ * are called from the thread that delivers preview frames and results.
+ */
+public class ExposureController {
+
+  /** The camera, as far as exposure goes. */
+  public interface Exposure {
+
+    /** Turns the torch on or off, and returns false if the camera has none. */
+    boolean setTorch(boolean on);
+
+    /** Locks or unlocks auto exposure and auto white balance, as far as supported. */
+    void setLocked(boolean locked);
+  }
+
+  /** Mean luminance, out of 255, below which the preview counts as dark. */
+  static final double DARK_LUMINANCE = 40;
+
+  /** Mean luminance above which a scene lit by the torch counts as saturated. */
+  static final double SATURATED_LUMINANCE = 230;
+
+  static final long DARK_NANOS = 1000000000L;
+
+  /** After the torch changes, exposure needs this long to adapt before anything is judged. */
+  static final long SETTLE_NANOS = 500000000L;
+
+  static final long CODE_HOLD_NANOS = 1500000000L;
+
+  /** Weight of each frame in the smoothed luminance. */
+  static final double SMOOTHING = 0.25;
+
+  private final Exposure mExposure;
+
+  private boolean isTorchEnabled = false;
+
+  private boolean isLockEnabled = false;
+
+  private double mLuminance = -1;
+
+  private boolean isTorchOn = false;
+
+  private boolean isTorchRetired = false;
+
+  private boolean isLocked = false;
+
+  private boolean hasSeenCode = false;
+
+  private long mLastCodeNanos;
+
+  private long mSettledNanos = Long.MIN_VALUE;
+
+  /** Start of the current run of dark, or saturated with the torch on, frames; or -1. */
+  private long mOutOfRangeSinceNanos = -1;
+
+  public ExposureController(Exposure exposure) {
+    mExposure = exposure;
+  }
+
+  public void setTorchEnabled(boolean torchEnabled) {
+    isTorchEnabled = torchEnabled;
+  }
+
+  public void setLockEnabled(boolean lockEnabled) {
+    isLockEnabled = lockEnabled;
+  }
+
+  /** Takes the mean luminance of a preview frame, ignored unless the torch is enabled. */
+  public void onFrame(double luminance, long nowNanos) {
+    if (isTorchEnabled && !isTorchRetired && nowNanos >= mSettledNanos) {
+      mLuminance = mLuminance < 0 ? luminance : mLuminance + (luminance - mLuminance) * SMOOTHING;
+      boolean outOfRange = isTorchOn
+          ? mLuminance > SATURATED_LUMINANCE : mLuminance < DARK_LUMINANCE;
+
+      if (!outOfRange) {
+        mOutOfRangeSinceNanos = -1;
+      } else if (mOutOfRangeSinceNanos < 0) {
+        mOutOfRangeSinceNanos = nowNanos;
+      } else if (nowNanos - mOutOfRangeSinceNanos >= DARK_NANOS) {
+        toggleTorch(nowNanos);
+      }
+    }
+
+    boolean lock = isLockEnabled && hasSeenCode && nowNanos >= mSettledNanos
+        && nowNanos - mLastCodeNanos < CODE_HOLD_NANOS;
+    if (lock != isLocked) {
+      isLocked = lock;
+      mExposure.setLocked(lock);
+    }
+  }
+
+  private void toggleTorch(long nowNanos) {
+    boolean on = !isTorchOn;
+    if (isLocked) {
+      // Locked exposure could not adapt to the new light.
+      isLocked = false;
+      mExposure.setLocked(false);
+    }
+    if (!mExposure.setTorch(on)) {
+      isTorchRetired = true;
+      return;
+    }
+    isTorchOn = on;
+    isTorchRetired = !on;
+    mLuminance = -1;
+    mOutOfRangeSinceNanos = -1;
+    mSettledNanos = nowNanos + SETTLE_NANOS;
+  }
+
+  /** Takes the time a code was read. */
+  public void onCodeSeen(long nowNanos) {
+    hasSeenCode = true;
+    mLastCodeNanos = nowNanos;
+  }
+
+  /**
+   * Forgets everything seen, as for a new camera session. The camera itself is not touched; the
+   * caller turns the torch off and unlocks exposure as it stops the preview.
+   */
+  public void reset() {
+    mLuminance = -1;
+    isTorchOn = false;
+    isTorchRetired = false;
+    isLocked = false;
+    hasSeenCode = false;
+    mSettledNanos = Long.MIN_VALUE;
+    mOutOfRangeSinceNanos = -1;
+  }
+
+  public boolean isTorchOn() {
+    return isTorchOn;
+  }
+
+  public boolean isLocked() {
+    return isLocked;
+  }
+}
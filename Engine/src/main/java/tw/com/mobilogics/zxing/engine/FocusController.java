@@ -0,0 +1,159 @@
+package tw.com.mobilogics.zxing.engine;
+
+/**
+ * Decides when a camera should run a one-shot focus while scanning, from the sharpness of the
+ * preview frames, instead of sweeping the lens at a fixed interval. A focus runs when the frames
+ * stay blurry, or when they turn much less sharp than the sharpest frames seen recently, for
+ * {@link #DROP_FRAMES} frames in a row, and at most once every {@link #DEFAULT_MIN_INTERVAL_NANOS}.
+ * A sharp, steady image never triggers one, so frame delivery is not stalled by needless sweeps.
+ *
+ * <p>With a continuous focus mode, the camera focuses by itself and a one-shot focus only helps it
+ * out of a wrong lens position; as that locks the focus, it is cancelled as soon as it completes,
+ * which hands the lens back to continuous focusing.
+ *
+ * <p>Sharpness is the sampled Laplacian variance of {@link FrameQualityGate.Sample#getSharpness}.
+ * All methods are called from the thread that delivers preview frames and focus results.
+ */
+public class FocusController {
+
+  /** The camera, as far as focusing goes. */
+  public interface Focuser {
+
+    /** Starts a one-shot focus, and returns false if it could not be started. */
+    boolean focus();
+
+    /** Stops a one-shot focus in progress, and returns the lens to the focus mode. */
+    void cancelFocus();
+
+    /** Whether the focus mode is a continuous one. */
+    boolean isContinuous();
+  }
+
+  /** Laplacian variance below which a frame counts as blurry whatever came before it. */
+  static final double DEFAULT_MIN_SHARPNESS = FrameQualityGate.DEFAULT_MIN_SHARPNESS;
+
+  /** Fraction of the recent peak sharpness below which a frame counts as a drop. */
+  static final double DEFAULT_DROP_RATIO = 0.5;
+
+  static final long DEFAULT_MIN_INTERVAL_NANOS = 2000000000L;
+
+  /** Some drivers never report the end of a focus run; it is cancelled after this long. */
+  static final long FOCUS_TIMEOUT_NANOS = 3000000000L;
+
+  /** Consecutive soft frames before a focus runs, so a single shaky frame does not trigger it. */
+  static final int DROP_FRAMES = 3;
+
+  /** Per frame decay of the peak, so the reference follows a scene that changes for good. */
+  static final double PEAK_DECAY = 0.97;
+
+  private final Focuser mFocuser;
+
+  private double mMinSharpness = DEFAULT_MIN_SHARPNESS;
+
+  private double mDropRatio = DEFAULT_DROP_RATIO;
+
+  private long mMinIntervalNanos = DEFAULT_MIN_INTERVAL_NANOS;
+
+  private double mPeakSharpness = 0;
+
+  private int mSoftFrames = 0;
+
+  private boolean isFocusing = false;
+
+  private boolean hasSeenFrame = false;
+
+  private long mFocusStartNanos;
+
+  private long mLastFocusNanos;
+
+  private int mFocusCount = 0;
+
+  public FocusController(Focuser focuser) {
+    mFocuser = focuser;
+  }
+
+  /**
+   * @param minSharpness Laplacian variance below which frames count as blurry; zero disables it
+   * @param dropRatio fraction of the recent peak below which frames count as a drop, below 1
+   * @param minIntervalNanos least time between the end of one focus run and the next
+   */
+  public void configure(double minSharpness, double dropRatio, long minIntervalNanos) {
+    if (minSharpness < 0 || dropRatio < 0 || dropRatio >= 1 || minIntervalNanos < 0) {
+      throw new IllegalArgumentException("Thresholds out of range");
+    }
+    mMinSharpness = minSharpness;
+    mDropRatio = dropRatio;
+    mMinIntervalNanos = minIntervalNanos;
+  }
+
+  /**
+   * Takes the sharpness of a preview frame, which is ignored while a focus runs, and returns
+   * whether a focus was started.
+   */
+  public boolean onFrame(double sharpness, long nowNanos) {
+    if (isFocusing) {
+      if (nowNanos - mFocusStartNanos >= FOCUS_TIMEOUT_NANOS) {
+        mFocuser.cancelFocus();
+        focusEnded(nowNanos);
+      }
+      return false;
+    }
+    if (!hasSeenFrame) {
+      // The lens may still be settling from the camera start; wait an interval before judging.
+      hasSeenFrame = true;
+      mLastFocusNanos = nowNanos;
+    }
+
+    mPeakSharpness = Math.max(sharpness, mPeakSharpness * PEAK_DECAY);
+    if (sharpness < mMinSharpness || sharpness < mPeakSharpness * mDropRatio) {
+      mSoftFrames++;
+    } else {
+      mSoftFrames = 0;
+    }
+
+    if (mSoftFrames < DROP_FRAMES || nowNanos - mLastFocusNanos < mMinIntervalNanos) {
+      return false;
+    }
+    if (!mFocuser.focus()) {
+      return false;
+    }
+    isFocusing = true;
+    mFocusStartNanos = nowNanos;
+    mFocusCount++;
+    return true;
+  }
+
+  /** Takes the end of a focus run, whether started here or not. */
+  public void onFocusComplete(boolean success, long nowNanos) {
+    boolean started = isFocusing;
+    focusEnded(nowNanos);
+    if (started && mFocuser.isContinuous()) {
+      mFocuser.cancelFocus();
+    }
+  }
+
+  private void focusEnded(long nowNanos) {
+    isFocusing = false;
+    mLastFocusNanos = nowNanos;
+    mSoftFrames = 0;
+    // The peak before the focus run belongs to a lens position that is gone.
+    mPeakSharpness = 0;
+  }
+
+  /** Forgets the frames seen and any focus run in progress, as for a new camera session. */
+  public void reset() {
+    isFocusing = false;
+    hasSeenFrame = false;
+    mSoftFrames = 0;
+    mPeakSharpness = 0;
+  }
+
+  public boolean isFocusing() {
+    return isFocusing;
+  }
+
+  /** Focus runs started since this controller was created. */
+  public int getFocusCount() {
+    return mFocusCount;
+  }
+}
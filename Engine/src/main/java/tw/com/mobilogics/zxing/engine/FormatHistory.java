@@ -0,0 +1,91 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.BarcodeFormat;
+
+/**
+ * Sliding window over the formats of the most recent results, used to guess which reader to try
+ * first, and the cadence at which a full multi-format scan is still run. Safe to configure from any
+ * thread.
+ */
+public class FormatHistory {
+
+  public static final int DEFAULT_WINDOW_SIZE = 20;
+
+  public static final int DEFAULT_FULL_SCAN_INTERVAL = 5;
+
+  private static final BarcodeFormat[] FORMATS = BarcodeFormat.values();
+
+  private final int[] mCounts = new int[FORMATS.length];
+
+  private BarcodeFormat[] mWindow = new BarcodeFormat[DEFAULT_WINDOW_SIZE];
+
+  private int mWindowCount = 0;
+
+  private int mWindowNext = 0;
+
+  private int mFullScanInterval = DEFAULT_FULL_SCAN_INTERVAL;
+
+  private int mFramesSinceFullScan = 0;
+
+  /** Changing the window size forgets the recorded formats. */
+  public synchronized void configure(int windowSize, int fullScanInterval) {
+    if (windowSize < 1 || fullScanInterval < 1) {
+      throw new IllegalArgumentException("Window size and full scan interval must be positive");
+    }
+    if (windowSize != mWindow.length) {
+      mWindow = new BarcodeFormat[windowSize];
+      clear();
+    }
+    mFullScanInterval = fullScanInterval;
+  }
+
+  synchronized void clear() {
+    for (int i = 0; i < mWindow.length; i++) {
+      mWindow[i] = null;
+    }
+    for (int i = 0; i < mCounts.length; i++) {
+      mCounts[i] = 0;
+    }
+    mWindowCount = 0;
+    mWindowNext = 0;
+    mFramesSinceFullScan = 0;
+  }
+
+  synchronized void record(BarcodeFormat format) {
+    BarcodeFormat evicted = mWindow[mWindowNext];
+    if (evicted != null) {
+      mCounts[evicted.ordinal()]--;
+    } else {
+      mWindowCount++;
+    }
+    mWindow[mWindowNext] = format;
+    mCounts[format.ordinal()]++;
+    mWindowNext = (mWindowNext + 1) % mWindow.length;
+  }
+
+  /** The format seen most often in the window, or null if nothing has been recorded yet. */
+  synchronized BarcodeFormat getLikelyFormat() {
+    if (mWindowCount == 0) {
+      return null;
+    }
+    int best = 0;
+    for (int i = 1; i < mCounts.length; i++) {
+      if (mCounts[i] > mCounts[best]) {
+        best = i;
+      }
+    }
+    return FORMATS[best];
+  }
+
+  /**
+   * Called once per frame whose likely reader came up empty; returns true on every
+   * {@code fullScanInterval}-th such frame.
+   */
+  synchronized boolean isFullScanDue() {
+    if (++mFramesSinceFullScan >= mFullScanInterval) {
+      mFramesSinceFullScan = 0;
+      return true;
+    }
+    return false;
+  }
+}
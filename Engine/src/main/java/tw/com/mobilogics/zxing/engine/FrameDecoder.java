@@ -0,0 +1,693 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.MultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Turns a {@link PreviewFrame} into a {@link Result}. The settings and statistics are shared and
+ * may be changed from any thread; the readers themselves are not thread safe, so every decode
+ * thread decodes through its own {@link Worker}.
+ */
+public class FrameDecoder {
+
+  private static final Result[] NO_RESULTS = new Result[0];
+
+  /** Shorter side, in pixels, that the decoded region needs before it is downscaled first. */
+  public static final int DEFAULT_MIN_DOWNSCALE_SIZE = 480;
+
+  private final FormatHistory mFormatHistory = new FormatHistory();
+
+  private final DecodeStatistics mStatistics = new DecodeStatistics();
+
+  private final RegionTracker mRegionTracker = new RegionTracker();
+
+  private volatile Map<DecodeHintType, ?> mHints;
+
+  private volatile boolean isAdaptiveReaderOrder = false;
+
+  private volatile ExecutorService mParallelExecutor = null;
+
+  private volatile DownscaleRetryPolicy mDownscaleRetryPolicy = null;
+
+  private volatile boolean isRegionTracking = false;
+
+  private volatile int mMinDownscaleSize = DEFAULT_MIN_DOWNSCALE_SIZE;
+
+  private volatile PipelineMetrics mMetrics = null;
+
+  public FrameDecoder(Map<DecodeHintType, ?> hints) {
+    mHints = hints;
+  }
+
+  /**
+   * Replaces the hints the readers are built from. May be called from any thread; each worker
+   * rebuilds its readers before the next frame it decodes.
+   */
+  public void setHints(Map<DecodeHintType, ?> hints) {
+    mHints = hints;
+  }
+
+  /**
+   * When enabled, each frame is first decoded with only the reader for the format seen most often
+   * recently, and the full set of readers runs only at the cadence set on
+   * {@link #getFormatHistory()}. May be called from any thread.
+   */
+  public void setAdaptiveReaderOrder(boolean adaptiveReaderOrder) {
+    isAdaptiveReaderOrder = adaptiveReaderOrder;
+  }
+
+  /**
+   * With an executor, full scans run the 1D readers and each 2D reader concurrently on it, see
+   * {@link ParallelReader}. With null, they run one after the other on the decode thread. May be
+   * called from any thread.
+   */
+  public void setParallelExecutor(ExecutorService executor) {
+    mParallelExecutor = executor;
+  }
+
+  /**
+   * With a policy, frames whose decoded region is at least {@code minSize} pixels on its shorter
+   * side are decoded at half resolution first, and again at full resolution as the policy says.
+   * With null, frames are decoded at full resolution only. May be called from any thread.
+   */
+  public void setDownscaledFirstPass(DownscaleRetryPolicy retryPolicy, int minSize) {
+    mMinDownscaleSize = minSize;
+    mDownscaleRetryPolicy = retryPolicy;
+  }
+
+  /**
+   * When enabled, frames are decoded only around the last barcode found, apart from the full
+   * decodes at the cadence set on {@link #getRegionTracker()}. May be called from any thread.
+   */
+  public void setRegionTracking(boolean regionTracking) {
+    mRegionTracker.clear();
+    isRegionTracking = regionTracking;
+  }
+
+  /**
+   * Records how long building the sources, rotating, binarizing and reading take for every frame
+   * into {@code metrics}; null stops recording. May be called from any thread, and takes effect
+   * from the next frame each worker decodes.
+   */
+  public void setMetrics(PipelineMetrics metrics) {
+    mMetrics = metrics;
+  }
+
+  public RegionTracker getRegionTracker() {
+    return mRegionTracker;
+  }
+
+  public FormatHistory getFormatHistory() {
+    return mFormatHistory;
+  }
+
+  public DecodeStatistics getStatistics() {
+    return mStatistics;
+  }
+
+  /** Returns a new worker, to be used by one decode thread at a time. */
+  public Worker newWorker() {
+    return new Worker();
+  }
+
+  private static Result decode(MultiFormatReader reader, BinaryBitmap bitmap) {
+    Result rawResult = null;
+    try {
+      rawResult = reader.decodeWithState(bitmap);
+    } catch (ReaderException re) {
+      // continue
+    } catch (NullPointerException npe) {
+      // This is terrible
+    } catch (ArrayIndexOutOfBoundsException aoe) {
+
+    } finally {
+      reader.reset();
+    }
+    return rawResult;
+  }
+
+  private static Result[] decodeMultiple(MultipleBarcodeReader reader, BinaryBitmap bitmap,
+      Map<DecodeHintType, ?> hints) {
+    try {
+      return reader.decodeMultiple(bitmap, hints);
+    } catch (ReaderException re) {
+      // continue
+    } catch (NullPointerException npe) {
+      // This is terrible
+    } catch (ArrayIndexOutOfBoundsException aoe) {
+
+    }
+    return NO_RESULTS;
+  }
+
+  /**
+   * Maps the points of a result found in a scaled or cropped part of the decoded region back to
+   * the region: each point is multiplied by {@code scale}, then moved by {@code dx}, {@code dy}.
+   */
+  private static Result transform(Result rawResult, int scale, int dx, int dy) {
+    ResultPoint[] points = rawResult.getResultPoints();
+    if (points == null) {
+      return rawResult;
+    }
+    ResultPoint[] mappedPoints = new ResultPoint[points.length];
+    for (int i = 0; i < points.length; i++) {
+      mappedPoints[i] = points[i] == null ? null
+          : new ResultPoint(points[i].getX() * scale + dx, points[i].getY() * scale + dy);
+    }
+    Result mapped = new Result(rawResult.getText(), rawResult.getRawBytes(), mappedPoints,
+        rawResult.getBarcodeFormat(), rawResult.getTimestamp());
+    mapped.putAllMetadata(rawResult.getResultMetadata());
+    return mapped;
+  }
+
+  /** The readers and scratch buffers of one decode thread. */
+  public class Worker {
+
+    private final MultiFormatReader mMultiFormatReader = new MultiFormatReader();
+
+    private final Map<BarcodeFormat, MultiFormatReader> mSingleFormatReaders =
+        new EnumMap<BarcodeFormat, MultiFormatReader>(BarcodeFormat.class);
+
+    private final YPlaneRotator mRotator = new YPlaneRotator();
+
+    private final ReusableHybridBinarizer.Workspace mBinarizerWorkspace =
+        new ReusableHybridBinarizer.Workspace();
+
+    // The half resolution pass has buffers of its own, so neither pass resizes the other's.
+
+    private final YPlaneDownsampler mDownsampler = new YPlaneDownsampler();
+
+    // The tracked region changes size often, so it does not resize the full frame's buffers.
+
+    private final ReusableHybridBinarizer.Workspace mTrackedWorkspace =
+        new ReusableHybridBinarizer.Workspace();
+
+    // Left, top, right and bottom of the tracked region in the upright frame.
+    private final int[] mTrackedRegion = new int[4];
+
+    private final YPlaneRotator mDownscaledRotator = new YPlaneRotator();
+
+    private final ReusableHybridBinarizer.Workspace mDownscaledWorkspace =
+        new ReusableHybridBinarizer.Workspace();
+
+    private final ParallelReader mParallelReader = new ParallelReader();
+
+    private final List<Result> mMultipleResults = new ArrayList<Result>();
+
+    private MultipleBarcodeReader mQrCodeMultiReader;
+
+    private MultiFormatReader mOtherFormatsReader;
+
+    private MultipleBarcodeReader mOtherFormatsMultiReader;
+
+    private Map<DecodeHintType, ?> mAppliedHints;
+
+    // The metrics of the frame being decoded, or null, and the time its stages took so far.
+
+    private PipelineMetrics mFrameMetrics;
+
+    private long mSourceNanos;
+
+    private long mRotationNanos;
+
+    private long mBinarizationNanos;
+
+    private Worker() {
+    }
+
+    public Result decode(PreviewFrame frame) {
+      long start = beginFrame();
+      Result rawResult = decodeFrame(frame);
+      endFrame(start);
+      return rawResult;
+    }
+
+    /**
+     * Returns every barcode found in the frame, or an empty array. QR codes are located together
+     * by {@link QRCodeMultiReader}; the other formats are searched for by splitting the frame
+     * around each barcode found with {@link GenericMultipleBarcodeReader}.
+     */
+    public Result[] decodeMultiple(PreviewFrame frame) {
+      long start = beginFrame();
+      Result[] rawResults = decodeMultipleFrame(frame);
+      endFrame(start);
+      return rawResults;
+    }
+
+    private Result decodeFrame(PreviewFrame frame) {
+      applyPendingHints();
+      RotatedLuminanceSource source = toSource(frame);
+      if (!isRegionTracking) {
+        return decodeFull(frame, source);
+      }
+
+      Result rawResult;
+      if (getTrackedRegion(frame)) {
+        long start = System.nanoTime();
+        rawResult = decode(cropToTrackedRegion(frame, source), mTrackedWorkspace);
+        mStatistics.recordTrackedPass(rawResult != null, System.nanoTime() - start);
+        if (rawResult != null) {
+          rawResult = transform(rawResult, 1,
+              mTrackedRegion[0] - frame.getCropLeft(), mTrackedRegion[1] - frame.getCropTop());
+        }
+      } else {
+        rawResult = decodeFull(frame, source);
+      }
+      track(frame, rawResult != null ? new Result[] {rawResult} : NO_RESULTS);
+      return rawResult;
+    }
+
+    private Result[] decodeMultipleFrame(PreviewFrame frame) {
+      applyPendingHints();
+      RotatedLuminanceSource source = toSource(frame);
+      if (!isRegionTracking) {
+        return decodeMultipleFull(frame, source);
+      }
+
+      Result[] rawResults;
+      if (getTrackedRegion(frame)) {
+        long start = System.nanoTime();
+        rawResults =
+            decodeMultiple(toBitmap(cropToTrackedRegion(frame, source), mTrackedWorkspace));
+        mStatistics.recordTrackedPass(rawResults.length > 0, System.nanoTime() - start);
+        for (int i = 0; i < rawResults.length; i++) {
+          rawResults[i] = transform(rawResults[i], 1,
+              mTrackedRegion[0] - frame.getCropLeft(), mTrackedRegion[1] - frame.getCropTop());
+        }
+      } else {
+        rawResults = decodeMultipleFull(frame, source);
+      }
+      track(frame, rawResults);
+      return rawResults;
+    }
+
+    private Result decodeFull(PreviewFrame frame, RotatedLuminanceSource source) {
+      if (isDownscaled(source)) {
+        long start = System.nanoTime();
+        Result rawResult = decode(downscale(frame, source), mDownscaledWorkspace);
+        mStatistics.recordDownscaledPass(rawResult != null, System.nanoTime() - start);
+        if (rawResult != null) {
+          return transform(rawResult, 2, 0, 0);
+        }
+      }
+      return decode(source, mBinarizerWorkspace);
+    }
+
+    private Result[] decodeMultipleFull(PreviewFrame frame, RotatedLuminanceSource source) {
+      Result[] downscaledResults = NO_RESULTS;
+      DownscaleRetryPolicy retryPolicy = mDownscaleRetryPolicy;
+      if (isDownscaled(source)) {
+        long start = System.nanoTime();
+        downscaledResults =
+            decodeMultiple(toBitmap(downscale(frame, source), mDownscaledWorkspace));
+        for (int i = 0; i < downscaledResults.length; i++) {
+          downscaledResults[i] = transform(downscaledResults[i], 2, 0, 0);
+        }
+        boolean sufficient = downscaledResults.length > 0
+            && retryPolicy != DownscaleRetryPolicy.ON_FAILURE_OR_PARTIAL;
+        mStatistics.recordDownscaledPass(sufficient, System.nanoTime() - start);
+        if (sufficient) {
+          return downscaledResults;
+        }
+      }
+
+      Result[] rawResults = decodeMultiple(toBitmap(source, mBinarizerWorkspace));
+      if (downscaledResults.length == 0) {
+        return rawResults;
+      }
+      // Codes found by both passes are reported once by the duplicate filter.
+      Result[] merged = new Result[downscaledResults.length + rawResults.length];
+      System.arraycopy(downscaledResults, 0, merged, 0, downscaledResults.length);
+      System.arraycopy(rawResults, 0, merged, downscaledResults.length, rawResults.length);
+      return merged;
+    }
+
+    private Result decode(LuminanceSource source, ReusableHybridBinarizer.Workspace workspace) {
+      BinaryBitmap bitmap = toBitmap(source, workspace);
+      Result rawResult = null;
+
+      BarcodeFormat likelyFormat =
+          isAdaptiveReaderOrder ? mFormatHistory.getLikelyFormat() : null;
+      MultiFormatReader likelyReader =
+          likelyFormat != null ? getSingleFormatReader(likelyFormat) : null;
+      if (likelyReader != null) {
+        long start = System.nanoTime();
+        rawResult = FrameDecoder.decode(likelyReader, bitmap);
+        mStatistics.recordAttempt(likelyFormat, rawResult != null, System.nanoTime() - start);
+      }
+
+      if (rawResult == null && (likelyReader == null || mFormatHistory.isFullScanDue())) {
+        long start = System.nanoTime();
+        ExecutorService executor = mParallelExecutor;
+        if (executor != null && mParallelReader.isWorthwhile()) {
+          rawResult = mParallelReader.decode(bitmap, source, executor);
+        } else {
+          rawResult = FrameDecoder.decode(mMultiFormatReader, bitmap);
+        }
+        mStatistics.recordFullScan(rawResult != null, System.nanoTime() - start);
+      }
+
+      if (rawResult != null) {
+        mFormatHistory.record(rawResult.getBarcodeFormat());
+      }
+      return rawResult;
+    }
+
+    private Result[] decodeMultiple(BinaryBitmap bitmap) {
+      long start = System.nanoTime();
+
+      mMultipleResults.clear();
+      if (mQrCodeMultiReader != null) {
+        Collections.addAll(mMultipleResults,
+            FrameDecoder.decodeMultiple(mQrCodeMultiReader, bitmap, mAppliedHints));
+      }
+      if (mOtherFormatsMultiReader != null) {
+        try {
+          Collections.addAll(mMultipleResults,
+              FrameDecoder.decodeMultiple(mOtherFormatsMultiReader, bitmap, mAppliedHints));
+        } finally {
+          mOtherFormatsReader.reset();
+        }
+      }
+
+      mStatistics.recordFullScan(!mMultipleResults.isEmpty(), System.nanoTime() - start);
+      return mMultipleResults.isEmpty()
+          ? NO_RESULTS : mMultipleResults.toArray(new Result[mMultipleResults.size()]);
+    }
+
+    /** Returns the time the frame started, if its stages are timed. */
+    private long beginFrame() {
+      mFrameMetrics = mMetrics;
+      if (mFrameMetrics == null) {
+        return 0;
+      }
+      mSourceNanos = 0;
+      mRotationNanos = 0;
+      mBinarizationNanos = 0;
+      return System.nanoTime();
+    }
+
+    private void endFrame(long start) {
+      if (mFrameMetrics != null) {
+        mFrameMetrics.recordDecodedFrame(System.nanoTime() - start,
+            mSourceNanos, mRotationNanos, mBinarizationNanos);
+        mFrameMetrics = null;
+      }
+    }
+
+    private long startTiming() {
+      return mFrameMetrics != null ? System.nanoTime() : 0;
+    }
+
+    private long elapsedSince(long start) {
+      return mFrameMetrics != null ? System.nanoTime() - start : 0;
+    }
+
+    private void applyPendingHints() {
+      Map<DecodeHintType, ?> hints = mHints;
+      if (hints != mAppliedHints) {
+        applyHints(hints);
+      }
+    }
+
+    private RotatedLuminanceSource toSource(PreviewFrame frame) {
+      long start = startTiming();
+      RotatedLuminanceSource source = new RotatedLuminanceSource(frame.getData(),
+          frame.getWidth(),
+          frame.getHeight(),
+          frame.getRotation(),
+          frame.isMirrored(),
+          frame.getCropLeft(),
+          frame.getCropTop(),
+          frame.getCropWidth(),
+          frame.getCropHeight(),
+          mRotator);
+      mSourceNanos += elapsedSince(start);
+      return source;
+    }
+
+    /** Copies the tracked region into {@link #mTrackedRegion} if this frame should use it. */
+    private boolean getTrackedRegion(PreviewFrame frame) {
+      return mRegionTracker.getRegion(frame.getCropLeft(),
+          frame.getCropTop(),
+          frame.getCropLeft() + frame.getCropWidth(),
+          frame.getCropTop() + frame.getCropHeight(),
+          mTrackedRegion);
+    }
+
+    private LuminanceSource cropToTrackedRegion(PreviewFrame frame, LuminanceSource source) {
+      long start = startTiming();
+      LuminanceSource cropped = source.crop(mTrackedRegion[0] - frame.getCropLeft(),
+          mTrackedRegion[1] - frame.getCropTop(),
+          mTrackedRegion[2] - mTrackedRegion[0],
+          mTrackedRegion[3] - mTrackedRegion[1]);
+      mSourceNanos += elapsedSince(start);
+      return cropped;
+    }
+
+    /** Moves the tracked region to the barcodes found, or lets it decay if there are none. */
+    private void track(PreviewFrame frame, Result[] rawResults) {
+      float minX = Float.MAX_VALUE;
+      float minY = Float.MAX_VALUE;
+      float maxX = -Float.MAX_VALUE;
+      float maxY = -Float.MAX_VALUE;
+      for (Result rawResult : rawResults) {
+        ResultPoint[] points = rawResult.getResultPoints();
+        if (points == null) {
+          continue;
+        }
+        for (ResultPoint point : points) {
+          if (point != null) {
+            minX = Math.min(minX, point.getX());
+            minY = Math.min(minY, point.getY());
+            maxX = Math.max(maxX, point.getX());
+            maxY = Math.max(maxY, point.getY());
+          }
+        }
+      }
+      if (minX <= maxX) {
+        mRegionTracker.onFound(minX + frame.getCropLeft(), minY + frame.getCropTop(),
+            maxX + frame.getCropLeft(), maxY + frame.getCropTop());
+      } else {
+        mRegionTracker.onMissed();
+      }
+    }
+
+    private boolean isDownscaled(LuminanceSource source) {
+      return mDownscaleRetryPolicy != null
+          && Math.min(source.getWidth(), source.getHeight()) >= mMinDownscaleSize;
+    }
+
+    /** Returns the decoded region of {@code frame} at half resolution, upright. */
+    private LuminanceSource downscale(PreviewFrame frame, RotatedLuminanceSource source) {
+      // The region is downsampled as it lies in the camera frame, then rotated like the original.
+      long start = startTiming();
+      int width = source.getDataWindowWidth() / 2;
+      int height = source.getDataWindowHeight() / 2;
+      byte[] data = mDownsampler.downsample(frame.getData(), frame.getWidth(), frame.getHeight(),
+          source.getDataLeft(), source.getDataTop(), width, height);
+      boolean swap = frame.getRotation() == 90 || frame.getRotation() == 270;
+      LuminanceSource downscaled = new RotatedLuminanceSource(data, width, height,
+          frame.getRotation(), frame.isMirrored(),
+          0, 0, swap ? height : width, swap ? width : height,
+          mDownscaledRotator);
+      mSourceNanos += elapsedSince(start);
+      return downscaled;
+    }
+
+    private BinaryBitmap toBitmap(LuminanceSource source,
+        ReusableHybridBinarizer.Workspace workspace) {
+      // The bitmap caches its binarized matrix, so a second reader does not binarize again.
+      if (mFrameMetrics == null) {
+        return new BinaryBitmap(new ReusableHybridBinarizer(source, workspace));
+      }
+      return new BinaryBitmap(
+          new TimedBinarizer(new ReusableHybridBinarizer(new TimedSource(source), workspace)));
+    }
+
+    private void applyHints(Map<DecodeHintType, ?> hints) {
+      mAppliedHints = hints;
+      mMultiFormatReader.setHints(hints);
+      mSingleFormatReaders.clear();
+      mParallelReader.setHints(hints);
+
+      Collection<?> formats = (Collection<?>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+      mQrCodeMultiReader = formats == null || formats.contains(BarcodeFormat.QR_CODE)
+          ? new QRCodeMultiReader() : null;
+
+      List<BarcodeFormat> otherFormats = new ArrayList<BarcodeFormat>();
+      for (BarcodeFormat format : BarcodeFormat.values()) {
+        if (format != BarcodeFormat.QR_CODE && (formats == null || formats.contains(format))) {
+          otherFormats.add(format);
+        }
+      }
+      if (otherFormats.isEmpty()) {
+        mOtherFormatsReader = null;
+        mOtherFormatsMultiReader = null;
+      } else {
+        Map<DecodeHintType, Object> otherHints =
+            new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        otherHints.putAll(hints);
+        otherHints.put(DecodeHintType.POSSIBLE_FORMATS, otherFormats);
+        mOtherFormatsReader = new MultiFormatReader();
+        mOtherFormatsReader.setHints(otherHints);
+        mOtherFormatsMultiReader =
+            new GenericMultipleBarcodeReader(new StatefulReader(mOtherFormatsReader));
+      }
+    }
+
+    /** Returns a reader for just {@code format}, or null if the format is not enabled. */
+    private MultiFormatReader getSingleFormatReader(BarcodeFormat format) {
+      MultiFormatReader reader = mSingleFormatReaders.get(format);
+      if (reader == null) {
+        Collection<?> formats =
+            (Collection<?>) mAppliedHints.get(DecodeHintType.POSSIBLE_FORMATS);
+        if (formats != null && !formats.contains(format)) {
+          return null;
+        }
+        Map<DecodeHintType, Object> hints =
+            new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        hints.putAll(mAppliedHints);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, Collections.singletonList(format));
+        reader = new MultiFormatReader();
+        reader.setHints(hints);
+        mSingleFormatReaders.put(format, reader);
+      }
+      return reader;
+    }
+
+    /** Adds the time spent producing the upright matrix to the rotation stage of the frame. */
+    private class TimedSource extends LuminanceSource {
+
+      private final LuminanceSource mSource;
+
+      TimedSource(LuminanceSource source) {
+        super(source.getWidth(), source.getHeight());
+        mSource = source;
+      }
+
+      @Override
+      public byte[] getRow(int y, byte[] row) {
+        return mSource.getRow(y, row);
+      }
+
+      @Override
+      public byte[] getMatrix() {
+        long start = System.nanoTime();
+        byte[] matrix = mSource.getMatrix();
+        mRotationNanos += System.nanoTime() - start;
+        return matrix;
+      }
+
+      @Override
+      public boolean isCropSupported() {
+        return mSource.isCropSupported();
+      }
+
+      @Override
+      public LuminanceSource crop(int left, int top, int width, int height) {
+        return mSource.crop(left, top, width, height);
+      }
+
+      @Override
+      public boolean isRotateSupported() {
+        return mSource.isRotateSupported();
+      }
+
+      @Override
+      public LuminanceSource rotateCounterClockwise() {
+        return mSource.rotateCounterClockwise();
+      }
+
+      @Override
+      public LuminanceSource rotateCounterClockwise45() {
+        return mSource.rotateCounterClockwise45();
+      }
+    }
+
+    /**
+     * Adds the time spent binarizing the whole region to the binarization stage of the frame. The
+     * matrix is only ever built on the decode thread, see {@link ParallelReader}.
+     */
+    private class TimedBinarizer extends Binarizer {
+
+      private final Binarizer mBinarizer;
+
+      TimedBinarizer(Binarizer binarizer) {
+        super(binarizer.getLuminanceSource());
+        mBinarizer = binarizer;
+      }
+
+      @Override
+      public BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+        return mBinarizer.getBlackRow(y, row);
+      }
+
+      @Override
+      public BitMatrix getBlackMatrix() throws NotFoundException {
+        long start = System.nanoTime();
+        try {
+          return mBinarizer.getBlackMatrix();
+        } finally {
+          mBinarizationNanos += System.nanoTime() - start;
+        }
+      }
+
+      @Override
+      public Binarizer createBinarizer(LuminanceSource source) {
+        return mBinarizer.createBinarizer(source);
+      }
+    }
+  }
+
+  /**
+   * Lets {@link GenericMultipleBarcodeReader} decode each part of a frame without rebuilding the
+   * readers, which {@link MultiFormatReader#decode(BinaryBitmap, Map)} does on every call.
+   */
+  private static class StatefulReader implements Reader {
+
+    private final MultiFormatReader mReader;
+
+    StatefulReader(MultiFormatReader reader) {
+      mReader = reader;
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image) throws NotFoundException {
+      return mReader.decodeWithState(image);
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image, Map<DecodeHintType, ?> hints)
+        throws NotFoundException {
+      return mReader.decodeWithState(image);
+    }
+
+    @Override
+    public void reset() {
+      mReader.reset();
+    }
+  }
+}
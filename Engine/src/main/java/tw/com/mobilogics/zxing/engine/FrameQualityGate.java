@@ -0,0 +1,241 @@
+package tw.com.mobilogics.zxing.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Rejects preview frames that are not worth decoding, before they are queued for the decode
+ * threads: frames taken while the lens is moving, frames too dark to binarize, blurry frames, and
+ * frames that hardly differ from the last frame let through. The checks look at every
+ * {@link #SAMPLE_STEP}-th pixel of the decoded region only.
+ *
+ * <p>Each frame rejected saves a full decode, so the CPU saved is roughly the number of rejected
+ * frames times {@link DecodeStatistics#getMeanFullScanNanos()}, minus {@link #getCheckNanos()}.
+ *
+ * <p>{@link #sample(PreviewFrame)} and {@link #check(Sample, boolean)} are called from the camera
+ * callback thread only; the counters may be read from any thread.
+ */
+public class FrameQualityGate {
+
+  /**
+   * What {@link #sample(PreviewFrame)} measured of one frame, shared by everything that judges the
+   * frame so that it is sampled only once.
+   */
+  public static final class Sample {
+
+    private byte[] mPixels = new byte[0];
+
+    private int mCount;
+
+    private double mLuminance;
+
+    private double mSharpness;
+
+    /** Time taken to sample the frame, counted by the gate only if it checks the sample. */
+    private long mSampleNanos;
+
+    private Sample() {
+    }
+
+    /** Mean luminance of the sampled pixels, out of 255. */
+    public double getLuminance() {
+      return mLuminance;
+    }
+
+    /** Laplacian variance of the sampled pixels; 0 for a region too small to measure. */
+    public double getSharpness() {
+      return mSharpness;
+    }
+  }
+
+  public enum Reason {
+    /** An auto focus run was in progress. */
+    FOCUSING,
+    /** Mean luminance below the minimum. */
+    TOO_DARK,
+    /** Laplacian variance, a measure of edge contrast, below the minimum. */
+    BLURRY,
+    /** Mean difference to the last frame let through below the minimum. */
+    UNCHANGED
+  }
+
+  static final int SAMPLE_STEP = 8;
+
+  static final double DEFAULT_MIN_SHARPNESS = 25;
+
+  static final int DEFAULT_MIN_LUMINANCE = 24;
+
+  static final double DEFAULT_MIN_DIFFERENCE = 1.5;
+
+  /** An unchanged scene is still decoded every so many frames, in case noise helps. */
+  static final int MAX_UNCHANGED_SKIPS = 5;
+
+  private final AtomicLongArray mRejectedFrames = new AtomicLongArray(Reason.values().length);
+
+  private final AtomicLong mPassedFrames = new AtomicLong();
+
+  private final AtomicLong mCheckNanos = new AtomicLong();
+
+  private double mMinSharpness = DEFAULT_MIN_SHARPNESS;
+
+  private int mMinLuminance = DEFAULT_MIN_LUMINANCE;
+
+  private double mMinDifference = DEFAULT_MIN_DIFFERENCE;
+
+  private final Sample mSample = new Sample();
+
+  private byte[] mPassedSamples = new byte[0];
+
+  private int mPassedSampleCount = -1;
+
+  private int mUnchangedSkips = 0;
+
+  /** A threshold of zero disables its check. */
+  public synchronized void configure(double minSharpness, int minLuminance, double minDifference) {
+    mMinSharpness = minSharpness;
+    mMinLuminance = minLuminance;
+    mMinDifference = minDifference;
+  }
+
+  public long getRejectedFrameCount(Reason reason) {
+    return mRejectedFrames.get(reason.ordinal());
+  }
+
+  public long getPassedFrameCount() {
+    return mPassedFrames.get();
+  }
+
+  /**
+   * Total time spent checking frames, sampling them included, in nanoseconds. Samples taken for
+   * focus or exposure alone and never checked are not counted.
+   */
+  public long getCheckNanos() {
+    return mCheckNanos.get();
+  }
+
+  /**
+   * Samples the decoded region of {@code frame} once, for its luminance, its sharpness and the
+   * comparison with the last frame let through, without counting the frame. The sample belongs to
+   * this gate and is valid until the next call.
+   */
+  public synchronized Sample sample(PreviewFrame frame) {
+    long start = System.nanoTime();
+    RotatedLuminanceSource source = new RotatedLuminanceSource(frame.getData(),
+        frame.getWidth(),
+        frame.getHeight(),
+        frame.getRotation(),
+        frame.isMirrored(),
+        frame.getCropLeft(),
+        frame.getCropTop(),
+        frame.getCropWidth(),
+        frame.getCropHeight(),
+        null);
+    // Brightness, edge contrast and change do not depend on the orientation, so the window is
+    // sampled as it lies in the camera frame.
+    byte[] data = frame.getData();
+    int dataWidth = frame.getWidth();
+    int left = source.getDataLeft();
+    int top = source.getDataTop();
+    int right = left + source.getDataWindowWidth() - 1;
+    int bottom = top + source.getDataWindowHeight() - 1;
+
+    Sample sample = mSample;
+    if (right - left < 2 || bottom - top < 2) {
+      sample.mCount = 0;
+      sample.mLuminance = 0;
+      sample.mSharpness = 0;
+      sample.mSampleNanos = System.nanoTime() - start;
+      return sample;
+    }
+    int columns = (right - left - 2) / SAMPLE_STEP + 1;
+    int rows = (bottom - top - 2) / SAMPLE_STEP + 1;
+    int count = columns * rows;
+    if (sample.mPixels.length < count) {
+      sample.mPixels = new byte[count];
+    }
+
+    // Samples skip the outermost pixels so every one has four neighbours for the Laplacian.
+    byte[] pixels = sample.mPixels;
+    long luminanceSum = 0;
+    double laplacianSum = 0;
+    double laplacianSquareSum = 0;
+    int i = 0;
+    for (int y = top + 1; y < bottom; y += SAMPLE_STEP) {
+      int offset = y * dataWidth + left + 1;
+      for (int x = left + 1; x < right; x += SAMPLE_STEP, offset += SAMPLE_STEP) {
+        int center = data[offset] & 0xff;
+        int laplacian = 4 * center
+            - (data[offset - 1] & 0xff)
+            - (data[offset + 1] & 0xff)
+            - (data[offset - dataWidth] & 0xff)
+            - (data[offset + dataWidth] & 0xff);
+        luminanceSum += center;
+        laplacianSum += laplacian;
+        laplacianSquareSum += (double) laplacian * laplacian;
+        pixels[i++] = (byte) center;
+      }
+    }
+
+    double laplacianMean = laplacianSum / count;
+    sample.mCount = count;
+    sample.mLuminance = (double) luminanceSum / count;
+    sample.mSharpness = laplacianSquareSum / count - laplacianMean * laplacianMean;
+    sample.mSampleNanos = System.nanoTime() - start;
+    return sample;
+  }
+
+  /** Returns why the frame should not be decoded, or null if it should. */
+  public Reason check(PreviewFrame frame, boolean focusing) {
+    return check(sample(frame), focusing);
+  }
+
+  /**
+   * Returns why the frame {@code sample} was taken from should not be decoded, or null if it
+   * should.
+   */
+  public synchronized Reason check(Sample sample, boolean focusing) {
+    long start = System.nanoTime();
+    Reason reason = focusing ? Reason.FOCUSING : judge(sample);
+    mCheckNanos.addAndGet(sample.mSampleNanos + System.nanoTime() - start);
+
+    if (reason != null) {
+      mRejectedFrames.incrementAndGet(reason.ordinal());
+    } else {
+      mPassedFrames.incrementAndGet();
+    }
+    return reason;
+  }
+
+  private Reason judge(Sample sample) {
+    int count = sample.mCount;
+    if (count == 0) {
+      return null;
+    }
+    if (sample.mLuminance < mMinLuminance) {
+      return Reason.TOO_DARK;
+    }
+    if (sample.mSharpness < mMinSharpness) {
+      return Reason.BLURRY;
+    }
+    if (count == mPassedSampleCount && mUnchangedSkips < MAX_UNCHANGED_SKIPS
+        && meanDifference(sample.mPixels, mPassedSamples, count) < mMinDifference) {
+      mUnchangedSkips++;
+      return Reason.UNCHANGED;
+    }
+
+    byte[] passed = mPassedSamples;
+    mPassedSamples = sample.mPixels;
+    sample.mPixels = passed;
+    mPassedSampleCount = count;
+    mUnchangedSkips = 0;
+    return null;
+  }
+
+  private static double meanDifference(byte[] a, byte[] b, int count) {
+    long sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += Math.abs((a[i] & 0xff) - (b[i] & 0xff));
+    }
+    return (double) sum / count;
+  }
+}
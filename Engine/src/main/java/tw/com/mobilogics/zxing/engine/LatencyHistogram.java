@@ -0,0 +1,125 @@
+package tw.com.mobilogics.zxing.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in nanoseconds into buckets that double in width every
+ * {@link #SUB_BUCKETS} buckets, so every recorded value is known to within an eighth of itself.
+ * Recording is lock-free and allocation-free and may happen on any number of threads at once.
+ *
+ * <p>{@link #drain()} takes the values recorded since the last drain; a value recorded while a
+ * drain is in progress may be counted in the next one instead.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  // Exact values below SUB_BUCKETS, then a group of SUB_BUCKETS per power of two up to 2^62.
+  static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+  private final AtomicLong mSum = new AtomicLong();
+
+  private final AtomicLong mMax = new AtomicLong();
+
+  /** Records one duration; negative durations count as zero. */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    mBuckets.incrementAndGet(indexOf(nanos));
+    mSum.addAndGet(nanos);
+    long max;
+    while (nanos > (max = mMax.get()) && !mMax.compareAndSet(max, nanos)) {
+      // Another thread raised the maximum in between; compare again.
+    }
+  }
+
+  /** Returns the values recorded since the last drain and starts counting from zero. */
+  public Snapshot drain() {
+    long[] counts = new long[BUCKET_COUNT];
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] = mBuckets.getAndSet(i, 0);
+      count += counts[i];
+    }
+    return new Snapshot(counts, count, mSum.getAndSet(0), mMax.getAndSet(0));
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /** Smallest value counted in bucket {@code index}. */
+  static long lowerBoundOf(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long subBucket = index % SUB_BUCKETS;
+    return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  /** The durations recorded between two drains. */
+  public static class Snapshot {
+
+    private final long[] mCounts;
+
+    private final long mCount;
+
+    private final long mSum;
+
+    private final long mMax;
+
+    Snapshot(long[] counts, long count, long sum, long max) {
+      mCounts = counts;
+      mCount = count;
+      mSum = sum;
+      mMax = max;
+    }
+
+    public long getCount() {
+      return mCount;
+    }
+
+    public long getMeanNanos() {
+      return mCount == 0 ? 0 : mSum / mCount;
+    }
+
+    public long getMaxNanos() {
+      return mMax;
+    }
+
+    /**
+     * Returns a duration that {@code percentile} percent of the recorded durations do not
+     * exceed, rounded up to the end of its bucket, or 0 if nothing was recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+      if (percentile < 0 || percentile > 100) {
+        throw new IllegalArgumentException("Percentile must be between 0 and 100");
+      }
+      if (mCount == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(mCount * percentile / 100));
+      long seen = 0;
+      for (int i = 0; i < mCounts.length; i++) {
+        seen += mCounts[i];
+        if (seen >= rank) {
+          long upperBound = i + 1 < mCounts.length ? lowerBoundOf(i + 1) - 1 : Long.MAX_VALUE;
+          return Math.min(upperBound, mMax);
+        }
+      }
+      return mMax;
+    }
+  }
+}
@@ -0,0 +1,259 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decodes one frame with the enabled readers split into groups that run concurrently: all 1D
+ * formats together, and each 2D format on its own. The frame is binarized once, before the groups
+ * start, and the first group to find a barcode wins; groups that have not started yet skip the
+ * frame, and the results of the ones still running are ignored. Readers do not stop when
+ * interrupted, so decoding returns only once every group has finished with the frame, which the
+ * caller is then free to recycle.
+ *
+ * <p>The groups share the binarized matrix, which they only read, but each group binarizes rows
+ * for the 1D readers into buffers of its own, as the groups run at the same time.
+ *
+ * <p>{@link #setHints(Map)} and {@link #decode(BinaryBitmap, LuminanceSource, ExecutorService)} are
+ * called from the decode thread only. The executor must not drop queued tasks, so it is shut down
+ * with {@link ExecutorService#shutdown()} rather than {@link ExecutorService#shutdownNow()}.
+ */
+public class ParallelReader {
+
+  /**
+   * Enough workers for the 1D readers and QR Code, Data Matrix and PDF417 to run at once. Aztec
+   * and MaxiCode have groups of their own too, which wait for a free worker when enabled.
+   */
+  public static final int WORKER_COUNT = 4;
+
+  private static final BarcodeFormat[] STANDALONE_FORMATS = {
+      BarcodeFormat.QR_CODE,
+      BarcodeFormat.DATA_MATRIX,
+      BarcodeFormat.PDF_417,
+      BarcodeFormat.AZTEC,
+      BarcodeFormat.MAXICODE
+  };
+
+  private final List<ReaderGroup> mGroups = new ArrayList<ReaderGroup>();
+
+  void setHints(Map<DecodeHintType, ?> hints) {
+    mGroups.clear();
+
+    Collection<?> formats = (Collection<?>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+    List<BarcodeFormat> oneDFormats = new ArrayList<BarcodeFormat>();
+    if (formats != null) {
+      for (Object format : formats) {
+        if (!isStandalone((BarcodeFormat) format)) {
+          oneDFormats.add((BarcodeFormat) format);
+        }
+      }
+    }
+    if (!oneDFormats.isEmpty()) {
+      mGroups.add(new ReaderGroup(hints, oneDFormats, true));
+    }
+    for (BarcodeFormat format : STANDALONE_FORMATS) {
+      if (formats == null || formats.contains(format)) {
+        List<BarcodeFormat> single = new ArrayList<BarcodeFormat>();
+        single.add(format);
+        mGroups.add(new ReaderGroup(hints, single, false));
+      }
+    }
+  }
+
+  /** Whether the enabled formats split into more than one group. */
+  boolean isWorthwhile() {
+    return mGroups.size() > 1;
+  }
+
+  /** Decodes {@code bitmap}, whose binarizer reads {@code source}. */
+  Result decode(BinaryBitmap bitmap, LuminanceSource source, ExecutorService executor) {
+    BitMatrix matrix;
+    try {
+      // Binarize on this thread so the groups share one cached matrix instead of racing for it.
+      matrix = bitmap.getBlackMatrix();
+    } catch (NotFoundException e) {
+      // The 2D readers would fail the same way, but the 1D readers binarize row by row and may
+      // still succeed.
+      matrix = null;
+    }
+
+    CompletionService<Result> completionService = new ExecutorCompletionService<Result>(executor);
+    AtomicBoolean decoded = new AtomicBoolean(false);
+    int submitted = 0;
+    try {
+      for (ReaderGroup group : mGroups) {
+        if (matrix != null || group.isOneD()) {
+          completionService.submit(new GroupTask(group, source, matrix, decoded));
+          submitted++;
+        }
+      }
+    } catch (RejectedExecutionException e) {
+      // The pool was shut down by stop(); wait for the groups already submitted.
+    }
+
+    Result rawResult = null;
+    boolean interrupted = false;
+    while (submitted > 0) {
+      Future<Result> future;
+      try {
+        future = completionService.take();
+      } catch (InterruptedException e) {
+        // The groups still hold the frame; keep waiting and pass the interrupt on afterwards.
+        interrupted = true;
+        continue;
+      }
+      submitted--;
+      Result groupResult = null;
+      try {
+        groupResult = future.get();
+      } catch (ExecutionException e) {
+        // A reader failed unexpectedly; treat it as not found.
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+      if (groupResult != null && rawResult == null) {
+        rawResult = groupResult;
+        decoded.set(true);
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    return rawResult;
+  }
+
+  private static boolean isStandalone(BarcodeFormat format) {
+    for (BarcodeFormat standalone : STANDALONE_FORMATS) {
+      if (standalone == format) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The reader and the row workspace for a subset of the formats. As a frame is decoded only once
+   * every group has finished with the previous one, a group never runs twice at once.
+   */
+  private static class ReaderGroup {
+
+    private final MultiFormatReader mReader = new MultiFormatReader();
+
+    private final ReusableHybridBinarizer.Workspace mWorkspace =
+        new ReusableHybridBinarizer.Workspace();
+
+    private final boolean isOneD;
+
+    ReaderGroup(Map<DecodeHintType, ?> hints, List<BarcodeFormat> formats, boolean oneD) {
+      Map<DecodeHintType, Object> groupHints =
+          new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+      groupHints.putAll(hints);
+      groupHints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+      mReader.setHints(groupHints);
+      isOneD = oneD;
+    }
+
+    boolean isOneD() {
+      return isOneD;
+    }
+  }
+
+  /**
+   * Hands out the matrix binarized before the groups started, and binarizes rows into a
+   * workspace of the group's own.
+   */
+  private static class GroupBinarizer extends Binarizer {
+
+    private final BitMatrix mMatrix;
+
+    private final ReusableHybridBinarizer.Workspace mWorkspace;
+
+    GroupBinarizer(LuminanceSource source, BitMatrix matrix,
+        ReusableHybridBinarizer.Workspace workspace) {
+      super(source);
+      mMatrix = matrix;
+      mWorkspace = workspace;
+    }
+
+    @Override
+    public BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+      return ReusableHybridBinarizer.binarizeRow(getLuminanceSource(), y, row, mWorkspace);
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException {
+      if (mMatrix == null) {
+        throw NotFoundException.getNotFoundInstance();
+      }
+      return mMatrix;
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+      return new HybridBinarizer(source);
+    }
+  }
+
+  private static class GroupTask implements Callable<Result> {
+
+    private final ReaderGroup mGroup;
+
+    private final LuminanceSource mSource;
+
+    private final BitMatrix mMatrix;
+
+    private final AtomicBoolean mDecoded;
+
+    GroupTask(ReaderGroup group, LuminanceSource source, BitMatrix matrix, AtomicBoolean decoded) {
+      mGroup = group;
+      mSource = source;
+      mMatrix = matrix;
+      mDecoded = decoded;
+    }
+
+    @Override
+    public Result call() {
+      if (mDecoded.get()) {
+        // Another group found the barcode before this one got a thread.
+        return null;
+      }
+      MultiFormatReader reader = mGroup.mReader;
+      try {
+        return reader.decodeWithState(
+            new BinaryBitmap(new GroupBinarizer(mSource, mMatrix, mGroup.mWorkspace)));
+      } catch (ReaderException re) {
+        return null;
+      } catch (NullPointerException npe) {
+        return null;
+      } catch (ArrayIndexOutOfBoundsException aoe) {
+        return null;
+      } finally {
+        reader.reset();
+      }
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package tw.com.mobilogics.zxing.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where the time of each frame goes, and how many frames and results went through, recorded by a
+ * {@link FrameDecoder} and a {@link DecodePipeline} given this object. Recording is lock-free and
+ * may happen on any thread; {@link #drain()} returns what was recorded since the last drain.
+ * Neither records anything, and neither reads the clock for it, while no metrics are set.
+ */
+public class PipelineMetrics {
+
+  public enum Stage {
+    /** From the frame being submitted to a decode thread taking it. */
+    ARRIVAL,
+    /** Turning the decoded region upright for the 2D readers. */
+    ROTATION,
+    /** Building the luminance sources, including the half resolution copy. */
+    SOURCE,
+    /** Thresholding the whole region for the 2D readers, rotation excluded. */
+    BINARIZATION,
+    /** The readers themselves, including the row thresholding of the 1D readers. */
+    DECODE,
+    /** From the decode finishing to its completion running on the main thread. */
+    DISPATCH
+  }
+
+  public interface Listener {
+
+    /** Called on the main thread with what was recorded since the previous call. */
+    void onMetrics(Snapshot snapshot);
+  }
+
+  private final LatencyHistogram[] mStages = new LatencyHistogram[Stage.values().length];
+
+  private final LatencyHistogram mLatency = new LatencyHistogram();
+
+  private final AtomicLong mFramesSubmitted = new AtomicLong();
+
+  private final AtomicLong mFramesDropped = new AtomicLong();
+
+  private final AtomicLong mFramesDecoded = new AtomicLong();
+
+  private final AtomicLong mResults = new AtomicLong();
+
+  private final AtomicLong mLastDrainNanos = new AtomicLong(System.nanoTime());
+
+  public PipelineMetrics() {
+    for (int i = 0; i < mStages.length; i++) {
+      mStages[i] = new LatencyHistogram();
+    }
+  }
+
+  void recordStage(Stage stage, long nanos) {
+    mStages[stage.ordinal()].record(nanos);
+  }
+
+  /** Records a frame the decoder finished, with the time its stages took. */
+  void recordDecodedFrame(long totalNanos, long sourceNanos, long rotationNanos,
+      long binarizationNanos) {
+    recordStage(Stage.SOURCE, sourceNanos);
+    recordStage(Stage.ROTATION, rotationNanos);
+    // The binarizer asks for the upright matrix, so its time includes the rotation.
+    recordStage(Stage.BINARIZATION, binarizationNanos - rotationNanos);
+    recordStage(Stage.DECODE, totalNanos - sourceNanos - binarizationNanos);
+    mFramesDecoded.incrementAndGet();
+  }
+
+  void recordSubmitted() {
+    mFramesSubmitted.incrementAndGet();
+  }
+
+  void recordDropped() {
+    mFramesDropped.incrementAndGet();
+  }
+
+  /** Records a result passed to the listener {@code latencyNanos} after its frame was submitted. */
+  void recordResult(long latencyNanos) {
+    mLatency.record(latencyNanos);
+    mResults.incrementAndGet();
+  }
+
+  /** Returns what was recorded since the last drain and starts counting from zero. */
+  public Snapshot drain() {
+    long now = System.nanoTime();
+    LatencyHistogram.Snapshot[] stages = new LatencyHistogram.Snapshot[mStages.length];
+    for (int i = 0; i < stages.length; i++) {
+      stages[i] = mStages[i].drain();
+    }
+    return new Snapshot(now - mLastDrainNanos.getAndSet(now), stages, mLatency.drain(),
+        mFramesSubmitted.getAndSet(0), mFramesDropped.getAndSet(0),
+        mFramesDecoded.getAndSet(0), mResults.getAndSet(0));
+  }
+
+  /** What was recorded between two drains. */
+  public static class Snapshot {
+
+    private final long mIntervalNanos;
+
+    private final LatencyHistogram.Snapshot[] mStages;
+
+    private final LatencyHistogram.Snapshot mLatency;
+
+    private final long mFramesSubmitted;
+
+    private final long mFramesDropped;
+
+    private final long mFramesDecoded;
+
+    private final long mResults;
+
+    Snapshot(long intervalNanos, LatencyHistogram.Snapshot[] stages,
+        LatencyHistogram.Snapshot latency, long framesSubmitted, long framesDropped,
+        long framesDecoded, long results) {
+      mIntervalNanos = intervalNanos;
+      mStages = stages;
+      mLatency = latency;
+      mFramesSubmitted = framesSubmitted;
+      mFramesDropped = framesDropped;
+      mFramesDecoded = framesDecoded;
+      mResults = results;
+    }
+
+    /** Time covered by this snapshot. */
+    public long getIntervalNanos() {
+      return mIntervalNanos;
+    }
+
+    public LatencyHistogram.Snapshot getStage(Stage stage) {
+      return mStages[stage.ordinal()];
+    }
+
+    /**
+     * From a frame being submitted, which is in the camera callback of the frame, to a result of
+     * that frame reaching the listener of the pipeline.
+     */
+    public LatencyHistogram.Snapshot getLatency() {
+      return mLatency;
+    }
+
+    /** Frames handed to the decode pipeline. */
+    public long getFramesSubmitted() {
+      return mFramesSubmitted;
+    }
+
+    /**
+     * Frames, or results of frames, discarded by the decode pipeline, see
+     * {@link DecodePipeline.Stage}. Frames rejected before submission, such as by a
+     * {@link FrameQualityGate}, are not counted.
+     */
+    public long getFramesDropped() {
+      return mFramesDropped;
+    }
+
+    /** Frames the decoder finished, whether or not a barcode was found. */
+    public long getFramesDecoded() {
+      return mFramesDecoded;
+    }
+
+    public long getResults() {
+      return mResults;
+    }
+
+    public double getResultsPerSecond() {
+      return mIntervalNanos == 0 ? 0 : mResults * 1e9 / mIntervalNanos;
+    }
+
+    public double getFramesDecodedPerSecond() {
+      return mIntervalNanos == 0 ? 0 : mFramesDecoded * 1e9 / mIntervalNanos;
+    }
+  }
+}
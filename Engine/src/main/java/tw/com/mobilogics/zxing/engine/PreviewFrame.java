@@ -0,0 +1,103 @@
+package tw.com.mobilogics.zxing.engine;
+
+/**
+ * One preview frame handed from the camera callback to the decode thread, together with the
+ * geometry that was current when it arrived.
+ */
+public class PreviewFrame {
+
+  private final byte[] mData;
+
+  private final int mWidth;
+
+  private final int mHeight;
+
+  private final int mRotation;
+
+  private final boolean isMirrored;
+
+  private final int mCropLeft;
+
+  private final int mCropTop;
+
+  private final int mCropWidth;
+
+  private final int mCropHeight;
+
+  private long mSequence;
+
+  private long mSubmittedNanos;
+
+  public PreviewFrame(byte[] data, int width, int height, int rotation, boolean mirrored,
+      int cropLeft, int cropTop, int cropWidth, int cropHeight) {
+    mData = data;
+    mWidth = width;
+    mHeight = height;
+    mRotation = rotation;
+    isMirrored = mirrored;
+    mCropLeft = cropLeft;
+    mCropTop = cropTop;
+    mCropWidth = cropWidth;
+    mCropHeight = cropHeight;
+  }
+
+  /** Position of the frame in submission order, assigned by {@link DecodePipeline}. */
+  long getSequence() {
+    return mSequence;
+  }
+
+  void setSequence(long sequence) {
+    mSequence = sequence;
+  }
+
+  /** When {@link DecodePipeline} accepted the frame, or 0 if it recorded no metrics then. */
+  long getSubmittedNanos() {
+    return mSubmittedNanos;
+  }
+
+  void setSubmittedNanos(long submittedNanos) {
+    mSubmittedNanos = submittedNanos;
+  }
+
+  public byte[] getData() {
+    return mData;
+  }
+
+  /** Width of the frame as delivered by the camera. */
+  public int getWidth() {
+    return mWidth;
+  }
+
+  /** Height of the frame as delivered by the camera. */
+  public int getHeight() {
+    return mHeight;
+  }
+
+  /** Clockwise rotation, in degrees, that makes the frame upright. */
+  public int getRotation() {
+    return mRotation;
+  }
+
+  /** Whether the upright frame has to be mirrored horizontally, as for front-facing cameras. */
+  public boolean isMirrored() {
+    return isMirrored;
+  }
+
+  // The crop rectangle is expressed in the coordinates of the upright frame.
+
+  public int getCropLeft() {
+    return mCropLeft;
+  }
+
+  public int getCropTop() {
+    return mCropTop;
+  }
+
+  public int getCropWidth() {
+    return mCropWidth;
+  }
+
+  public int getCropHeight() {
+    return mCropHeight;
+  }
+}
@@ -0,0 +1,227 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Picks the smallest preview size on which a typical symbol of every configured format still gets
+ * enough pixels per module, instead of the largest size of the right aspect ratio. Fewer pixels
+ * per frame means less to rotate, binarize and decode, and a shorter wait for each result.
+ *
+ * <p>A symbol is assumed to span {@link #setSymbolFill(double) a fraction} of the decoded region:
+ * of its width for 1D formats and PDF417, and of its shorter side for the square 2D formats.
+ * {@link #setDensityScale(double)} raises or lowers every density target at once, see
+ * {@link PreviewSizeTuner}.
+ *
+ * <p>{@link #select} depends on its arguments and the settings only, so it can be called with any
+ * list of sizes, on or off a device.
+ */
+public class PreviewSizeSelector {
+
+  /** A preview size as the camera reports it, in sensor orientation. */
+  public static final class Size {
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    public Size(int width, int height) {
+      mWidth = width;
+      mHeight = height;
+    }
+
+    public int getWidth() {
+      return mWidth;
+    }
+
+    public int getHeight() {
+      return mHeight;
+    }
+
+    int getArea() {
+      return mWidth * mHeight;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Size)) {
+        return false;
+      }
+      Size other = (Size) o;
+      return mWidth == other.mWidth && mHeight == other.mHeight;
+    }
+
+    @Override
+    public int hashCode() {
+      return mWidth * 31 + mHeight;
+    }
+
+    @Override
+    public String toString() {
+      return mWidth + "x" + mHeight;
+    }
+  }
+
+  static final double DEFAULT_SYMBOL_FILL = 0.5;
+
+  /** Pixels per module the readers of matrix codes need to find the finder patterns reliably. */
+  static final double MIN_PIXELS_PER_MODULE_2D = 3;
+
+  /** Pixels per narrow bar the row readers, PDF417 included, need. */
+  static final double MIN_PIXELS_PER_MODULE_1D = 2;
+
+  /** Sizes this much further from the view's aspect ratio than the closest are not considered. */
+  static final double ASPECT_TOLERANCE = 0.05;
+
+  /** Smaller sizes look too coarse on screen; the same floor as {@code CameraView}'s. */
+  static final int MIN_PREVIEW_AREA = 65536;
+
+  private List<BarcodeFormat> mFormats = Collections.emptyList();
+
+  private double mSymbolFill = DEFAULT_SYMBOL_FILL;
+
+  private double mDensityScale = 1;
+
+  public synchronized void setFormats(Collection<BarcodeFormat> formats) {
+    mFormats = new ArrayList<BarcodeFormat>(formats);
+  }
+
+  /** Fraction of the decoded region the smallest symbol to be read spans, above 0 and up to 1. */
+  public synchronized void setSymbolFill(double symbolFill) {
+    if (symbolFill <= 0 || symbolFill > 1) {
+      throw new IllegalArgumentException("Symbol fill must be above 0 and at most 1");
+    }
+    mSymbolFill = symbolFill;
+  }
+
+  /** Multiplies every pixels per module target; above 1 for larger sizes, below for smaller. */
+  public synchronized void setDensityScale(double densityScale) {
+    if (densityScale <= 0) {
+      throw new IllegalArgumentException("Density scale must be positive");
+    }
+    mDensityScale = densityScale;
+  }
+
+  public synchronized double getDensityScale() {
+    return mDensityScale;
+  }
+
+  /**
+   * Returns the smallest of {@code sizes}, among those closest to the aspect ratio of the view,
+   * that meets the density of every format, or the largest of them if none does. Returns null
+   * for an empty list.
+   *
+   * @param displayOrientation clockwise rotation from the sensor to the display, in degrees
+   * @param regionWidthFraction width of the decoded region over the width of the view
+   * @param regionHeightFraction height of the decoded region over the height of the view
+   */
+  public synchronized Size select(List<Size> sizes, int displayOrientation, int viewWidth,
+      int viewHeight, double regionWidthFraction, double regionHeightFraction) {
+    boolean portrait = displayOrientation == 90 || displayOrientation == 270;
+    double targetRatio =
+        portrait ? (double) viewHeight / viewWidth : (double) viewWidth / viewHeight;
+
+    double minDiff = Double.MAX_VALUE;
+    for (Size size : sizes) {
+      minDiff = Math.min(minDiff, aspectDifference(size, targetRatio));
+    }
+
+    Size smallestMeeting = null;
+    Size largest = null;
+    for (Size size : sizes) {
+      if (aspectDifference(size, targetRatio) > minDiff + ASPECT_TOLERANCE) {
+        continue;
+      }
+      if (largest == null || size.getArea() > largest.getArea()) {
+        largest = size;
+      }
+      int uprightWidth = portrait ? size.mHeight : size.mWidth;
+      int uprightHeight = portrait ? size.mWidth : size.mHeight;
+      if (size.getArea() >= MIN_PREVIEW_AREA
+          && meetsDensity(uprightWidth * regionWidthFraction, uprightHeight * regionHeightFraction)
+          && (smallestMeeting == null || size.getArea() < smallestMeeting.getArea())) {
+        smallestMeeting = size;
+      }
+    }
+    return smallestMeeting != null ? smallestMeeting : largest;
+  }
+
+  private static double aspectDifference(Size size, double targetRatio) {
+    return Math.abs((double) size.mWidth / size.mHeight - targetRatio);
+  }
+
+  /** Whether a region of the given size, in preview pixels, is dense enough for every format. */
+  private boolean meetsDensity(double regionWidth, double regionHeight) {
+    for (BarcodeFormat format : mFormats) {
+      int modules = modulesAcross(format);
+      if (modules == 0) {
+        continue;
+      }
+      double span = isSquare(format) ? Math.min(regionWidth, regionHeight) : regionWidth;
+      double pixelsPerModule = span * mSymbolFill / modules;
+      if (pixelsPerModule < minPixelsPerModule(format) * mDensityScale) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static boolean isSquare(BarcodeFormat format) {
+    return format == BarcodeFormat.QR_CODE
+        || format == BarcodeFormat.DATA_MATRIX
+        || format == BarcodeFormat.AZTEC
+        || format == BarcodeFormat.MAXICODE;
+  }
+
+  static double minPixelsPerModule(BarcodeFormat format) {
+    return isSquare(format) ? MIN_PIXELS_PER_MODULE_2D : MIN_PIXELS_PER_MODULE_1D;
+  }
+
+  /**
+   * Width in modules, quiet zones left out, of a typical symbol: about ten characters for the
+   * variable length 1D formats, wide bars taken as three narrow ones, a version 4 QR code, a 24 by
+   * 24 Data Matrix, a three column PDF417 and a compact Aztec code. Zero for formats that are not
+   * read on their own.
+   */
+  static int modulesAcross(BarcodeFormat format) {
+    switch (format) {
+      case UPC_A:
+      case EAN_13:
+        return 95;
+      case UPC_E:
+        return 51;
+      case EAN_8:
+        return 67;
+      case RSS_14:
+        return 96;
+      case RSS_EXPANDED:
+        return 200;
+      case CODE_39:
+        return 192;
+      case CODE_93:
+        return 127;
+      case CODE_128:
+        return 145;
+      case ITF:
+        return 135;
+      case CODABAR:
+        return 156;
+      case PDF_417:
+        return 120;
+      case QR_CODE:
+        return 33;
+      case DATA_MATRIX:
+        return 24;
+      case AZTEC:
+        return 23;
+      case MAXICODE:
+        return 30;
+      default:
+        return 0;
+    }
+  }
+}
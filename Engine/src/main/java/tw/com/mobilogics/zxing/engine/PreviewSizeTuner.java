@@ -0,0 +1,110 @@
+package tw.com.mobilogics.zxing.engine;
+
+/**
+ * Adjusts the density scale of a {@link PreviewSizeSelector} from how the full scans of a
+ * {@link FrameDecoder} went. After every {@link #DEFAULT_WINDOW} full scans, a mean decode time
+ * over the frame budget lowers the scale by one step, and a hit rate under
+ * {@link #MIN_HIT_RATE} with time to spare for a step more pixels raises it. A scale that once
+ * proved too slow is not tried again, so the preview size settles instead of flipping back and
+ * forth.
+ *
+ * <p>A low hit rate also comes from frames with nothing to read, so the scale only ever rises up
+ * to {@link #MAX_SCALE}, and only while decoding stays within budget.
+ */
+public class PreviewSizeTuner {
+
+  static final int DEFAULT_WINDOW = 30;
+
+  /** Two frames at 30 frames per second; slower decoding makes results visibly late. */
+  static final long DEFAULT_FRAME_BUDGET_NANOS = 66000000L;
+
+  static final double MIN_HIT_RATE = 0.05;
+
+  /** Each step changes the density target by this factor, so the pixel count by its square. */
+  static final double STEP = 1.25;
+
+  static final double MIN_SCALE = 0.5;
+
+  static final double MAX_SCALE = 2;
+
+  private int mWindow = DEFAULT_WINDOW;
+
+  private long mFrameBudgetNanos = DEFAULT_FRAME_BUDGET_NANOS;
+
+  private double mScale = 1;
+
+  private double mCeiling = MAX_SCALE;
+
+  private int mLastAttempts = 0;
+
+  private double mLastHits = 0;
+
+  private double mLastNanos = 0;
+
+  /**
+   * @param window full scans between two adjustments
+   * @param frameBudgetNanos mean decode time above which the preview size is lowered
+   */
+  public synchronized void configure(int window, long frameBudgetNanos) {
+    if (window <= 0 || frameBudgetNanos <= 0) {
+      throw new IllegalArgumentException("Window and frame budget must be positive");
+    }
+    mWindow = window;
+    mFrameBudgetNanos = frameBudgetNanos;
+  }
+
+  public synchronized double getScale() {
+    return mScale;
+  }
+
+  /** Forgets the measurements and returns to a scale of 1, as for a new camera. */
+  public synchronized void reset() {
+    mScale = 1;
+    mCeiling = MAX_SCALE;
+    mLastAttempts = 0;
+    mLastHits = 0;
+    mLastNanos = 0;
+  }
+
+  /**
+   * Takes the running totals of {@link DecodeStatistics}, and returns whether the scale changed.
+   *
+   * @param attempts {@link DecodeStatistics#getFullScanAttempts()}
+   * @param hitRate {@link DecodeStatistics#getFullScanHitRate()}
+   * @param meanNanos {@link DecodeStatistics#getMeanFullScanNanos()}
+   */
+  public synchronized boolean update(int attempts, double hitRate, long meanNanos) {
+    if (attempts < mLastAttempts) {
+      // The statistics were reset; start a new window.
+      mLastAttempts = 0;
+      mLastHits = 0;
+      mLastNanos = 0;
+    }
+    int windowAttempts = attempts - mLastAttempts;
+    if (windowAttempts < mWindow) {
+      return false;
+    }
+
+    double hits = hitRate * attempts;
+    double nanos = (double) meanNanos * attempts;
+    double windowHitRate = (hits - mLastHits) / windowAttempts;
+    double windowMeanNanos = (nanos - mLastNanos) / windowAttempts;
+    mLastAttempts = attempts;
+    mLastHits = hits;
+    mLastNanos = nanos;
+
+    double scale = mScale;
+    if (windowMeanNanos > mFrameBudgetNanos) {
+      mCeiling = Math.max(MIN_SCALE, Math.min(mCeiling, scale / STEP));
+      scale = Math.max(MIN_SCALE, scale / STEP);
+    } else if (windowHitRate < MIN_HIT_RATE
+        && windowMeanNanos * STEP * STEP <= mFrameBudgetNanos) {
+      scale = Math.min(mCeiling, scale * STEP);
+    }
+    if (scale == mScale) {
+      return false;
+    }
+    mScale = scale;
+    return true;
+  }
+}
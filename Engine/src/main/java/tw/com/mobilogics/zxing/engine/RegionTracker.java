@@ -0,0 +1,111 @@
+package tw.com.mobilogics.zxing.engine;
+
+/**
+ * The region of the upright frame where the last barcode was found, grown by a margin so the next
+ * frame is likely to show the barcode inside it too. Frames are decoded in this region only, apart
+ * from a full decode every few frames; every frame without a result grows the region further, and
+ * after a number of them it is forgotten. Coordinates are in the upright frame. Safe to use from
+ * any thread.
+ */
+public class RegionTracker {
+
+  public static final int DEFAULT_FULL_SCAN_INTERVAL = 10;
+
+  public static final int DEFAULT_MAX_MISSES = 8;
+
+  /** Margin around the found barcode, relative to its longer side. */
+  private static final float MARGIN = 0.5f;
+
+  /** Margin around the found barcode, in pixels, on top of the relative one. */
+  private static final int MIN_MARGIN = 16;
+
+  /** Growth on each side after a miss, relative to the region's longer side. */
+  private static final float DECAY_GROWTH = 0.125f;
+
+  private int mFullScanInterval = DEFAULT_FULL_SCAN_INTERVAL;
+
+  private int mMaxMisses = DEFAULT_MAX_MISSES;
+
+  private boolean hasRegion = false;
+
+  private int mLeft;
+
+  private int mTop;
+
+  private int mRight;
+
+  private int mBottom;
+
+  private int mMisses = 0;
+
+  private int mFramesSinceFullScan = 0;
+
+  public synchronized void configure(int fullScanInterval, int maxMisses) {
+    if (fullScanInterval < 1 || maxMisses < 0) {
+      throw new IllegalArgumentException(
+          "Full scan interval must be positive and miss count not negative");
+    }
+    mFullScanInterval = fullScanInterval;
+    mMaxMisses = maxMisses;
+  }
+
+  public synchronized void clear() {
+    hasRegion = false;
+    mMisses = 0;
+    mFramesSinceFullScan = 0;
+  }
+
+  /**
+   * Called once per frame. Copies the tracked region, clipped to the given bounds, into
+   * {@code outRegion} as left, top, right and bottom, and returns true if the frame should be
+   * decoded in that region only. Returns false if there is no region, it falls outside the bounds,
+   * or a full decode is due.
+   */
+  synchronized boolean getRegion(int left, int top, int right, int bottom, int[] outRegion) {
+    if (!hasRegion) {
+      return false;
+    }
+    if (++mFramesSinceFullScan >= mFullScanInterval) {
+      mFramesSinceFullScan = 0;
+      return false;
+    }
+    outRegion[0] = Math.max(mLeft, left);
+    outRegion[1] = Math.max(mTop, top);
+    outRegion[2] = Math.min(mRight, right);
+    outRegion[3] = Math.min(mBottom, bottom);
+    if (outRegion[2] - outRegion[0] < ReusableHybridBinarizer.MINIMUM_DIMENSION
+        || outRegion[3] - outRegion[1] < ReusableHybridBinarizer.MINIMUM_DIMENSION) {
+      return false;
+    }
+    // A region as large as the bounds saves nothing over a full decode.
+    return outRegion[0] > left || outRegion[1] > top
+        || outRegion[2] < right || outRegion[3] < bottom;
+  }
+
+  /** Tracks the bounding box of the points of a result. */
+  synchronized void onFound(float minX, float minY, float maxX, float maxY) {
+    float margin = Math.max(maxX - minX, maxY - minY) * MARGIN + MIN_MARGIN;
+    mLeft = (int) (minX - margin);
+    mTop = (int) (minY - margin);
+    mRight = (int) Math.ceil(maxX + margin);
+    mBottom = (int) Math.ceil(maxY + margin);
+    hasRegion = true;
+    mMisses = 0;
+  }
+
+  /** Grows the region after a frame without a result, and forgets it after too many. */
+  synchronized void onMissed() {
+    if (!hasRegion) {
+      return;
+    }
+    if (++mMisses > mMaxMisses) {
+      hasRegion = false;
+      return;
+    }
+    int growth = (int) Math.ceil(Math.max(mRight - mLeft, mBottom - mTop) * DECAY_GROWTH);
+    mLeft -= growth;
+    mTop -= growth;
+    mRight += growth;
+    mBottom += growth;
+  }
+}
@@ -0,0 +1,347 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+/**
+ * Produces the same output as ZXing's {@link HybridBinarizer}, but keeps the row buffer, the
+ * histogram, the block black points and the output {@link BitMatrix} in a {@link Workspace} that
+ * is reused from frame to frame, so frames of the same size allocate nothing but the binarizer
+ * itself. The matrix returned by {@link #getBlackMatrix()} is only valid until the workspace is
+ * used for the next frame.
+ *
+ * <p>The thresholding follows ZXing 3.1.0: images of at least {@link #MINIMUM_DIMENSION} pixels
+ * each way are thresholded per 8x8 block against the average of the surrounding 5x5 blocks, smaller
+ * ones against a global histogram, and rows for the 1D readers always against a histogram of the
+ * row.
+ */
+class ReusableHybridBinarizer extends Binarizer {
+
+  private static final int BLOCK_SIZE_POWER = 3;
+
+  private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER;
+
+  private static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;
+
+  static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+
+  private static final int MIN_DYNAMIC_RANGE = 24;
+
+  private static final int LUMINANCE_BITS = 5;
+
+  private static final int LUMINANCE_SHIFT = 8 - LUMINANCE_BITS;
+
+  private static final int LUMINANCE_BUCKETS = 1 << LUMINANCE_BITS;
+
+  private final Workspace mWorkspace;
+
+  private BitMatrix mMatrix;
+
+  ReusableHybridBinarizer(LuminanceSource source, Workspace workspace) {
+    super(source);
+    mWorkspace = workspace;
+  }
+
+  @Override
+  public BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+    return binarizeRow(getLuminanceSource(), y, row, mWorkspace);
+  }
+
+  /**
+   * Binarizes row {@code y} of {@code source} as {@link #getBlackRow} does, with the row buffers
+   * of {@code workspace}, for binarizers that share a matrix but must not share row buffers.
+   */
+  static BitArray binarizeRow(LuminanceSource source, int y, BitArray row, Workspace workspace)
+      throws NotFoundException {
+    int width = source.getWidth();
+    if (row == null || row.getSize() < width) {
+      row = new BitArray(width);
+    } else {
+      row.clear();
+    }
+
+    byte[] luminances = source.getRow(y, workspace.obtainRow(width));
+    int[] buckets = workspace.obtainBuckets();
+    for (int x = 0; x < width; x++) {
+      buckets[(luminances[x] & 0xff) >> LUMINANCE_SHIFT]++;
+    }
+    int blackPoint = estimateBlackPoint(buckets);
+
+    int left = luminances[0] & 0xff;
+    int center = luminances[1] & 0xff;
+    for (int x = 1; x < width - 1; x++) {
+      int right = luminances[x + 1] & 0xff;
+      // A simple -1 4 -1 box filter with a weight of 2.
+      if (((center << 2) - left - right) >> 1 < blackPoint) {
+        row.set(x);
+      }
+      left = center;
+      center = right;
+    }
+    return row;
+  }
+
+  @Override
+  public BitMatrix getBlackMatrix() throws NotFoundException {
+    if (mMatrix != null) {
+      return mMatrix;
+    }
+    LuminanceSource source = getLuminanceSource();
+    int width = source.getWidth();
+    int height = source.getHeight();
+    if (width >= MINIMUM_DIMENSION && height >= MINIMUM_DIMENSION) {
+      byte[] luminances = source.getMatrix();
+      int subWidth = width >> BLOCK_SIZE_POWER;
+      if ((width & BLOCK_SIZE_MASK) != 0) {
+        subWidth++;
+      }
+      int subHeight = height >> BLOCK_SIZE_POWER;
+      if ((height & BLOCK_SIZE_MASK) != 0) {
+        subHeight++;
+      }
+      int[][] blackPoints = mWorkspace.obtainBlackPoints(subWidth, subHeight);
+      calculateBlackPoints(luminances, subWidth, subHeight, width, height, blackPoints);
+      BitMatrix matrix = mWorkspace.obtainMatrix(width, height);
+      calculateThresholdForBlock(luminances, subWidth, subHeight, width, height, blackPoints,
+          matrix);
+      mMatrix = matrix;
+    } else {
+      mMatrix = getGlobalHistogramMatrix(source, width, height);
+    }
+    return mMatrix;
+  }
+
+  /**
+   * Crops get a stock binarizer, since their matrix must not share the workspace with the matrix
+   * of the whole frame.
+   */
+  @Override
+  public Binarizer createBinarizer(LuminanceSource source) {
+    return new HybridBinarizer(source);
+  }
+
+  private BitMatrix getGlobalHistogramMatrix(LuminanceSource source, int width, int height)
+      throws NotFoundException {
+    int[] buckets = mWorkspace.obtainBuckets();
+    for (int y = 1; y < 5; y++) {
+      byte[] luminances = source.getRow(height * y / 5, mWorkspace.obtainRow(width));
+      int right = (width << 2) / 5;
+      for (int x = width / 5; x < right; x++) {
+        buckets[(luminances[x] & 0xff) >> LUMINANCE_SHIFT]++;
+      }
+    }
+    int blackPoint = estimateBlackPoint(buckets);
+
+    BitMatrix matrix = mWorkspace.obtainMatrix(width, height);
+    byte[] luminances = source.getMatrix();
+    for (int y = 0; y < height; y++) {
+      int offset = y * width;
+      for (int x = 0; x < width; x++) {
+        if ((luminances[offset + x] & 0xff) < blackPoint) {
+          matrix.set(x, y);
+        }
+      }
+    }
+    return matrix;
+  }
+
+  private static int estimateBlackPoint(int[] buckets) throws NotFoundException {
+    // Find the tallest peak in the histogram.
+    int numBuckets = buckets.length;
+    int maxBucketCount = 0;
+    int firstPeak = 0;
+    int firstPeakSize = 0;
+    for (int x = 0; x < numBuckets; x++) {
+      if (buckets[x] > firstPeakSize) {
+        firstPeak = x;
+        firstPeakSize = buckets[x];
+      }
+      if (buckets[x] > maxBucketCount) {
+        maxBucketCount = buckets[x];
+      }
+    }
+
+    // Find the second-tallest peak, weighted by its distance from the first.
+    int secondPeak = 0;
+    int secondPeakScore = 0;
+    for (int x = 0; x < numBuckets; x++) {
+      int distanceToBiggest = x - firstPeak;
+      int score = buckets[x] * distanceToBiggest * distanceToBiggest;
+      if (score > secondPeakScore) {
+        secondPeak = x;
+        secondPeakScore = score;
+      }
+    }
+
+    if (firstPeak > secondPeak) {
+      int temp = firstPeak;
+      firstPeak = secondPeak;
+      secondPeak = temp;
+    }
+
+    // Too little contrast to tell black from white.
+    if (secondPeak - firstPeak <= numBuckets >> 4) {
+      throw NotFoundException.getNotFoundInstance();
+    }
+
+    // Find the valley between the peaks, favouring the side of the white peak.
+    int bestValley = secondPeak - 1;
+    int bestValleyScore = -1;
+    for (int x = secondPeak - 1; x > firstPeak; x--) {
+      int fromFirst = x - firstPeak;
+      int score = fromFirst * fromFirst * (secondPeak - x) * (maxBucketCount - buckets[x]);
+      if (score > bestValleyScore) {
+        bestValley = x;
+        bestValleyScore = score;
+      }
+    }
+    return bestValley << LUMINANCE_SHIFT;
+  }
+
+  private static void calculateThresholdForBlock(byte[] luminances, int subWidth, int subHeight,
+      int width, int height, int[][] blackPoints, BitMatrix matrix) {
+    int maxYOffset = height - BLOCK_SIZE;
+    int maxXOffset = width - BLOCK_SIZE;
+    for (int y = 0; y < subHeight; y++) {
+      int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+      int top = cap(y, 2, subHeight - 3);
+      for (int x = 0; x < subWidth; x++) {
+        int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+        int left = cap(x, 2, subWidth - 3);
+        int sum = 0;
+        for (int z = -2; z <= 2; z++) {
+          int[] blackRow = blackPoints[top + z];
+          sum += blackRow[left - 2] + blackRow[left - 1] + blackRow[left] + blackRow[left + 1]
+              + blackRow[left + 2];
+        }
+        thresholdBlock(luminances, xoffset, yoffset, sum / 25, width, matrix);
+      }
+    }
+  }
+
+  private static int cap(int value, int min, int max) {
+    return value < min ? min : value > max ? max : value;
+  }
+
+  private static void thresholdBlock(byte[] luminances, int xoffset, int yoffset, int threshold,
+      int stride, BitMatrix matrix) {
+    for (int y = 0, offset = yoffset * stride + xoffset; y < BLOCK_SIZE; y++, offset += stride) {
+      for (int x = 0; x < BLOCK_SIZE; x++) {
+        // <= so that pixels of 0 are black even if the threshold is 0.
+        if ((luminances[offset + x] & 0xff) <= threshold) {
+          matrix.set(xoffset + x, yoffset + y);
+        }
+      }
+    }
+  }
+
+  private static void calculateBlackPoints(byte[] luminances, int subWidth, int subHeight,
+      int width, int height, int[][] blackPoints) {
+    int maxYOffset = height - BLOCK_SIZE;
+    int maxXOffset = width - BLOCK_SIZE;
+    for (int y = 0; y < subHeight; y++) {
+      int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+      for (int x = 0; x < subWidth; x++) {
+        int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+        int sum = 0;
+        int min = 0xff;
+        int max = 0;
+        for (int yy = 0, offset = yoffset * width + xoffset; yy < BLOCK_SIZE;
+            yy++, offset += width) {
+          for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+            int pixel = luminances[offset + xx] & 0xff;
+            sum += pixel;
+            if (pixel < min) {
+              min = pixel;
+            }
+            if (pixel > max) {
+              max = pixel;
+            }
+          }
+          // Once the range is wide enough, only the sum of the remaining rows matters.
+          if (max - min > MIN_DYNAMIC_RANGE) {
+            for (yy++, offset += width; yy < BLOCK_SIZE; yy++, offset += width) {
+              for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                sum += luminances[offset + xx] & 0xff;
+              }
+            }
+          }
+        }
+
+        int average = sum >> (BLOCK_SIZE_POWER * 2);
+        if (max - min <= MIN_DYNAMIC_RANGE) {
+          // A flat block is assumed to be white, unless its neighbours say it is darker than them.
+          average = min / 2;
+          if (y > 0 && x > 0) {
+            int averageNeighborBlackPoint =
+                (blackPoints[y - 1][x] + (2 * blackPoints[y][x - 1]) + blackPoints[y - 1][x - 1])
+                    / 4;
+            if (min < averageNeighborBlackPoint) {
+              average = averageNeighborBlackPoint;
+            }
+          }
+        }
+        blackPoints[y][x] = average;
+      }
+    }
+  }
+
+  /**
+   * Buffers shared by the binarizers of consecutive frames on one thread; a workspace must never
+   * be used by two threads at once. Buffers are replaced only when a frame needs a different size.
+   */
+  static class Workspace {
+
+    private byte[] mRow = new byte[0];
+
+    private final int[] mBuckets = new int[LUMINANCE_BUCKETS];
+
+    private int[][] mBlackPoints = new int[0][0];
+
+    private BitMatrix mMatrix;
+
+    private int mAllocations = 0;
+
+    /** Number of buffers allocated so far; stays put while the frame size does not change. */
+    int getAllocationCount() {
+      return mAllocations;
+    }
+
+    byte[] obtainRow(int width) {
+      if (mRow.length < width) {
+        mRow = new byte[width];
+        mAllocations++;
+      }
+      return mRow;
+    }
+
+    int[] obtainBuckets() {
+      for (int i = 0; i < mBuckets.length; i++) {
+        mBuckets[i] = 0;
+      }
+      return mBuckets;
+    }
+
+    int[][] obtainBlackPoints(int subWidth, int subHeight) {
+      if (mBlackPoints.length < subHeight || mBlackPoints[0].length < subWidth) {
+        mBlackPoints = new int[subHeight][subWidth];
+        mAllocations++;
+      }
+      return mBlackPoints;
+    }
+
+    BitMatrix obtainMatrix(int width, int height) {
+      if (mMatrix == null || mMatrix.getWidth() != width || mMatrix.getHeight() != height) {
+        mMatrix = new BitMatrix(width, height);
+        mAllocations++;
+      } else {
+        mMatrix.clear();
+      }
+      return mMatrix;
+    }
+  }
+}
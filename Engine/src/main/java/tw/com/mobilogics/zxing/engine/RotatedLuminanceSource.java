@@ -0,0 +1,163 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A {@link LuminanceSource} over the Y plane of a YUV frame as it looks after rotating it
+ * clockwise by 0, 90, 180 or 270 degrees and optionally mirroring it. Pixels are read through
+ * index remapping, so the frame itself is never rotated; only {@link #getMatrix()} materializes
+ * the cropped window, using a {@link YPlaneRotator} that may be shared between frames.
+ */
+public class RotatedLuminanceSource extends LuminanceSource {
+
+  private final byte[] mYuvData;
+
+  private final int mDataWidth;
+
+  private final int mDataHeight;
+
+  private final int mRotation;
+
+  private final boolean isMirrored;
+
+  private final int mLeft;
+
+  private final int mTop;
+
+  private final YPlaneRotator mRotator;
+
+  // Pixel (x, y) of the window is at mYuvData[mOrigin + x * mStepX + y * mStepY].
+  private final int mOrigin;
+
+  private final int mStepX;
+
+  private final int mStepY;
+
+  // The window as it lies in the camera frame.
+
+  private final int mDataLeft;
+
+  private final int mDataTop;
+
+  private final int mDataWindowWidth;
+
+  private final int mDataWindowHeight;
+
+  /**
+   * The window given by {@code left}, {@code top}, {@code width} and {@code height} is in the
+   * coordinates of the upright frame. The matrix returned by {@link #getMatrix()} is only valid
+   * until {@code rotator} is used again.
+   */
+  public RotatedLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight,
+      int rotation, boolean mirrored, int left, int top, int width, int height,
+      YPlaneRotator rotator) {
+    super(width, height);
+
+    boolean swap = rotation == 90 || rotation == 270;
+    int uprightWidth = swap ? dataHeight : dataWidth;
+    int uprightHeight = swap ? dataWidth : dataHeight;
+    if (left < 0 || top < 0 || left + width > uprightWidth || top + height > uprightHeight) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+
+    mYuvData = yuvData;
+    mDataWidth = dataWidth;
+    mDataHeight = dataHeight;
+    mRotation = rotation;
+    isMirrored = mirrored;
+    mLeft = left;
+    mTop = top;
+    mRotator = rotator;
+
+    int last = dataWidth * dataHeight - 1;
+    int base;
+    switch (rotation) {
+      case 0:
+        base = mirrored ? dataWidth - 1 : 0;
+        mStepX = mirrored ? -1 : 1;
+        mStepY = dataWidth;
+        break;
+      case 90:
+        base = mirrored ? 0 : (dataHeight - 1) * dataWidth;
+        mStepX = mirrored ? dataWidth : -dataWidth;
+        mStepY = 1;
+        break;
+      case 180:
+        base = mirrored ? (dataHeight - 1) * dataWidth : last;
+        mStepX = mirrored ? 1 : -1;
+        mStepY = -dataWidth;
+        break;
+      case 270:
+        base = mirrored ? last : dataWidth - 1;
+        mStepX = mirrored ? -dataWidth : dataWidth;
+        mStepY = -1;
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported rotation: " + rotation);
+    }
+    mOrigin = base + left * mStepX + top * mStepY;
+
+    // Map two opposite corners of the window back to the camera frame to find the window there.
+    int first = mOrigin;
+    int opposite = mOrigin + (width - 1) * mStepX + (height - 1) * mStepY;
+    mDataLeft = Math.min(first % dataWidth, opposite % dataWidth);
+    mDataTop = Math.min(first / dataWidth, opposite / dataWidth);
+    mDataWindowWidth = Math.abs(first % dataWidth - opposite % dataWidth) + 1;
+    mDataWindowHeight = Math.abs(first / dataWidth - opposite / dataWidth) + 1;
+  }
+
+  /** Left edge of the window in the camera frame, before rotation. */
+  public int getDataLeft() {
+    return mDataLeft;
+  }
+
+  public int getDataTop() {
+    return mDataTop;
+  }
+
+  public int getDataWindowWidth() {
+    return mDataWindowWidth;
+  }
+
+  public int getDataWindowHeight() {
+    return mDataWindowHeight;
+  }
+
+  @Override
+  public byte[] getRow(int y, byte[] row) {
+    if (y < 0 || y >= getHeight()) {
+      throw new IllegalArgumentException("Requested row is outside the image: " + y);
+    }
+    int width = getWidth();
+    if (row == null || row.length < width) {
+      row = new byte[width];
+    }
+    int offset = mOrigin + y * mStepY;
+    if (mStepX == 1) {
+      System.arraycopy(mYuvData, offset, row, 0, width);
+    } else {
+      for (int x = 0; x < width; x++) {
+        row[x] = mYuvData[offset];
+        offset += mStepX;
+      }
+    }
+    return row;
+  }
+
+  @Override
+  public byte[] getMatrix() {
+    return mRotator.rotate(mYuvData, mDataWidth, mDataHeight,
+        mDataLeft, mDataTop, mDataWindowWidth, mDataWindowHeight, mRotation, isMirrored);
+  }
+
+  @Override
+  public boolean isCropSupported() {
+    return true;
+  }
+
+  @Override
+  public LuminanceSource crop(int left, int top, int width, int height) {
+    return new RotatedLuminanceSource(mYuvData, mDataWidth, mDataHeight, mRotation, isMirrored,
+        mLeft + left, mTop + top, width, height, mRotator);
+  }
+}
@@ -0,0 +1,44 @@
+package tw.com.mobilogics.zxing.engine;
+
+/**
+ * Halves a window of the luminance (Y) plane in both directions by averaging each 2x2 block,
+ * writing into an output buffer that is reused between frames.
+ *
+ * <p>Instances are not thread safe.
+ */
+class YPlaneDownsampler {
+
+  private byte[] mOutput = new byte[0];
+
+  /**
+   * Downsamples the {@code width * 2} x {@code height * 2} window at ({@code left}, {@code top})
+   * of the Y plane to {@code width} x {@code height}.
+   *
+   * @return the downsampled plane, packed without padding. The array is reused by the next call
+   * and may be longer than {@code width * height}.
+   */
+  byte[] downsample(byte[] yuvData, int dataWidth, int dataHeight,
+      int left, int top, int width, int height) {
+    if (left < 0 || top < 0 || left + width * 2 > dataWidth || top + height * 2 > dataHeight) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+
+    int size = width * height;
+    if (mOutput.length < size) {
+      mOutput = new byte[size];
+    }
+
+    byte[] output = mOutput;
+    int outputOffset = 0;
+    for (int y = 0; y < height; y++) {
+      int upper = (top + y * 2) * dataWidth + left;
+      int lower = upper + dataWidth;
+      for (int x = 0; x < width; x++, upper += 2, lower += 2) {
+        int sum = (yuvData[upper] & 0xff) + (yuvData[upper + 1] & 0xff)
+            + (yuvData[lower] & 0xff) + (yuvData[lower + 1] & 0xff);
+        output[outputOffset++] = (byte) ((sum + 2) >> 2);
+      }
+    }
+    return output;
+  }
+}
@@ -0,0 +1,106 @@
+package tw.com.mobilogics.zxing.engine;
+
+/**
+ * Rotates the luminance (Y) plane of a YUV frame in tiles so that both reads and writes stay
+ * within a few cache lines, writing into an output buffer that is reused between frames. The
+ * chroma planes are never touched.
+ *
+ * <p>Instances are not thread safe.
+ */
+public class YPlaneRotator {
+
+  static final int TILE_SIZE = 16;
+
+  private byte[] mOutput = new byte[0];
+
+  private int mOutputWidth;
+
+  private int mOutputHeight;
+
+  /**
+   * Rotates the {@code width} x {@code height} window at ({@code left}, {@code top}) of the Y
+   * plane clockwise by {@code degrees}, then optionally mirrors it horizontally, as needed for
+   * front-facing cameras.
+   *
+   * @return the rotated plane, packed without padding. The array is reused by the next call and
+   * may be longer than {@code getOutputWidth() * getOutputHeight()}.
+   */
+  byte[] rotate(byte[] yuvData, int dataWidth, int dataHeight,
+      int left, int top, int width, int height, int degrees, boolean mirror) {
+    if (left < 0 || top < 0 || left + width > dataWidth || top + height > dataHeight) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+
+    int size = width * height;
+    if (mOutput.length < size) {
+      mOutput = new byte[size];
+    }
+
+    boolean swap = degrees == 90 || degrees == 270;
+    mOutputWidth = swap ? height : width;
+    mOutputHeight = swap ? width : height;
+
+    // Every rotation/mirror combination maps source pixel (x, y) of the window to output index
+    // origin + x * stepX + y * stepY.
+    int origin;
+    int stepX;
+    int stepY;
+    switch (degrees) {
+      case 0:
+        if (!mirror) {
+          for (int y = 0; y < height; y++) {
+            System.arraycopy(yuvData, (top + y) * dataWidth + left, mOutput, y * width, width);
+          }
+          return mOutput;
+        }
+        origin = width - 1;
+        stepX = -1;
+        stepY = width;
+        break;
+      case 90:
+        origin = mirror ? 0 : height - 1;
+        stepX = height;
+        stepY = mirror ? 1 : -1;
+        break;
+      case 180:
+        origin = mirror ? (height - 1) * width : size - 1;
+        stepX = mirror ? 1 : -1;
+        stepY = -width;
+        break;
+      case 270:
+        origin = mirror ? size - 1 : (width - 1) * height;
+        stepX = -height;
+        stepY = mirror ? -1 : 1;
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported rotation: " + degrees);
+    }
+
+    byte[] output = mOutput;
+    for (int tileTop = 0; tileTop < height; tileTop += TILE_SIZE) {
+      int tileBottom = Math.min(tileTop + TILE_SIZE, height);
+      for (int tileLeft = 0; tileLeft < width; tileLeft += TILE_SIZE) {
+        int tileRight = Math.min(tileLeft + TILE_SIZE, width);
+        for (int y = tileTop; y < tileBottom; y++) {
+          int in = (top + y) * dataWidth + left + tileLeft;
+          int out = origin + tileLeft * stepX + y * stepY;
+          for (int x = tileLeft; x < tileRight; x++) {
+            output[out] = yuvData[in++];
+            out += stepX;
+          }
+        }
+      }
+    }
+    return output;
+  }
+
+  /** Width of the plane produced by the last {@link #rotate} call. */
+  int getOutputWidth() {
+    return mOutputWidth;
+  }
+
+  /** Height of the plane produced by the last {@link #rotate} call. */
+  int getOutputHeight() {
+    return mOutputHeight;
+  }
+}
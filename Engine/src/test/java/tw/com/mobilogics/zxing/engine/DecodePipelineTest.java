@@ -0,0 +1,383 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.Result;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class DecodePipelineTest extends TestCase {
+
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  /** The main thread of the pipeline; every pipeline call and completion runs on it. */
+  private final ExecutorService mMain = Executors.newSingleThreadExecutor();
+
+  private final ResultExecutor mResultExecutor = new ResultExecutor();
+
+  private final RecordingListener mListener = new RecordingListener();
+
+  private DecodePipeline mPipeline;
+
+  private int mSubmitted = 0;
+
+  @Override
+  protected void setUp() throws Exception {
+    Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, Collections.singletonList(BarcodeFormat.QR_CODE));
+    mPipeline = new DecodePipeline(new FrameDecoder(hints), mListener, mResultExecutor);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    onMain(new Runnable() {
+      @Override
+      public void run() {
+        mPipeline.shutdown();
+      }
+    });
+    mMain.shutdown();
+  }
+
+  public void testEveryFrameIsReleasedOnce() throws Exception {
+    start(3, false);
+    List<PreviewFrame> frames = new ArrayList<PreviewFrame>();
+    for (int i = 0; i < 30; i++) {
+      frames.add(i % 3 == 2 ? blankFrame(320, 240)
+          : codeFrame("frame-" + i, i % 2 == 0 ? 640 : 320, i % 2 == 0 ? 480 : 240));
+    }
+    for (PreviewFrame frame : frames) {
+      submit(frame);
+    }
+    settle();
+
+    for (PreviewFrame frame : frames) {
+      assertEquals(1, mListener.getReleaseCount(frame));
+    }
+  }
+
+  public void testResultsArriveInSequenceOrder() throws Exception {
+    start(3, true);
+    mResultExecutor.hold();
+    for (int i = 0; i < 6; i++) {
+      submitAndWait(codeFrame("frame-" + i, 320, 240));
+    }
+    // The completions reach the main thread newest first.
+    mResultExecutor.release(true);
+    settle();
+
+    assertEquals(Arrays.asList("frame-0", "frame-1", "frame-2", "frame-3", "frame-4", "frame-5"),
+        mListener.getResults());
+  }
+
+  public void testFramesCompletedBeforeAResultAreDroppedAtDispatch() throws Exception {
+    start(3, false);
+    mResultExecutor.hold();
+    for (int i = 0; i < 4; i++) {
+      submitAndWait(codeFrame("frame-" + i, 320, 240));
+    }
+    mResultExecutor.release(true);
+    settle();
+
+    assertEquals(Collections.singletonList("frame-0"), mListener.getResults());
+    assertEquals(3, mPipeline.getDroppedFrameCount(DecodePipeline.Stage.DISPATCH));
+    assertEquals(0, mPipeline.getDroppedFrameCount(DecodePipeline.Stage.DELIVERY));
+  }
+
+  public void testFramesDecodingAtAResultAreDroppedAtDecode() throws Exception {
+    start(2, false);
+    mResultExecutor.hold();
+    submitAndWait(codeFrame("frame-0", 320, 240));
+    BlockingFrame decoding = new BlockingFrame(codeFrame("frame-1", 320, 240));
+    submit(decoding);
+    decoding.awaitDecoding();
+    mResultExecutor.release(false);
+    // The first frame's result has been delivered once the main thread gets here.
+    onMain(new Runnable() {
+      @Override
+      public void run() {
+      }
+    });
+    decoding.proceed();
+    settle();
+
+    assertEquals(Collections.singletonList("frame-0"), mListener.getResults());
+    assertEquals(1, mPipeline.getDroppedFrameCount(DecodePipeline.Stage.DECODE));
+    assertEquals(0, mPipeline.getDroppedFrameCount(DecodePipeline.Stage.DISPATCH));
+  }
+
+  public void testThrowingDecodeDoesNotStallLaterCompletions() throws Exception {
+    start(1, false);
+    PreviewFrame failing = new ThrowingFrame(new IllegalStateException("Broken frame"));
+    submitAndWait(failing);
+    PreviewFrame frame = codeFrame("frame-1", 320, 240);
+    submit(frame);
+    settle();
+
+    assertEquals(Collections.singletonList("frame-1"), mListener.getResults());
+    assertEquals(1, mListener.getReleaseCount(failing));
+    assertEquals(1, mListener.getReleaseCount(frame));
+  }
+
+  public void testErrorDoesNotStopDecoding() throws Exception {
+    Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+    Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+      @Override
+      public void uncaughtException(Thread thread, Throwable throwable) {
+        // Expected from the failing frame.
+      }
+    });
+    try {
+      start(1, false);
+      PreviewFrame failing = new ThrowingFrame(new OutOfMemoryError("Frame too large"));
+      submitAndWait(failing);
+      submit(codeFrame("frame-1", 320, 240));
+      settle();
+
+      assertEquals(Collections.singletonList("frame-1"), mListener.getResults());
+      assertEquals(1, mListener.getReleaseCount(failing));
+    } finally {
+      Thread.setDefaultUncaughtExceptionHandler(handler);
+    }
+  }
+
+  private void start(final int maxFramesInFlight, final boolean continuous) throws Exception {
+    onMain(new Runnable() {
+      @Override
+      public void run() {
+        mPipeline.setMaxFramesInFlight(maxFramesInFlight);
+        mPipeline.setContinuous(continuous);
+        mPipeline.start();
+      }
+    });
+  }
+
+  private void submit(final PreviewFrame frame) throws Exception {
+    mSubmitted++;
+    onMain(new Runnable() {
+      @Override
+      public void run() {
+        mPipeline.submit(frame);
+      }
+    });
+  }
+
+  /** Submits {@code frame} and waits until its completion is posted, so it is never dropped. */
+  private void submitAndWait(PreviewFrame frame) throws Exception {
+    submit(frame);
+    awaitPosted();
+  }
+
+  /** Waits until every frame submitted has been released and completed on the main thread. */
+  private void settle() throws Exception {
+    awaitPosted();
+    onMain(new Runnable() {
+      @Override
+      public void run() {
+      }
+    });
+  }
+
+  /** Waits until every frame submitted has been released and its completion posted. */
+  private void awaitPosted() throws Exception {
+    mListener.awaitReleases(mSubmitted);
+    // Frames dropped before they reached a decode thread complete without being posted.
+    long dropped = mPipeline.getDroppedFrameCount(DecodePipeline.Stage.DELIVERY);
+    mResultExecutor.awaitPosted(mSubmitted - (int) dropped);
+  }
+
+  private void onMain(Runnable runnable) throws Exception {
+    mMain.submit(runnable).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /** A frame as the camera delivers it, landscape and upright, with a QR code in the middle. */
+  private static PreviewFrame codeFrame(String text, int width, int height)
+      throws WriterException {
+    PreviewFrame frame = blankFrame(width, height);
+    int size = Math.min(width, height) * 3 / 4;
+    BitMatrix code = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, size, size);
+    int left = (width - code.getWidth()) / 2;
+    int top = (height - code.getHeight()) / 2;
+    byte[] data = frame.getData();
+    for (int y = 0; y < code.getHeight(); y++) {
+      for (int x = 0; x < code.getWidth(); x++) {
+        if (code.get(x, y)) {
+          data[(top + y) * width + left + x] = (byte) 35;
+        }
+      }
+    }
+    return frame;
+  }
+
+  private static PreviewFrame blankFrame(int width, int height) {
+    byte[] data = new byte[width * height * 3 / 2];
+    Arrays.fill(data, 0, width * height, (byte) 205);
+    return new PreviewFrame(data, width, height, 0, false, 0, 0, width, height);
+  }
+
+  private static final class RecordingListener implements DecodePipeline.Listener {
+
+    private final List<String> mResults = new ArrayList<String>();
+
+    private final Map<PreviewFrame, Integer> mReleases =
+        new IdentityHashMap<PreviewFrame, Integer>();
+
+    private int mReleaseCount = 0;
+
+    @Override
+    public synchronized void onResult(Result rawResult) {
+      mResults.add(rawResult.getText());
+    }
+
+    @Override
+    public synchronized void onFrameReleased(PreviewFrame frame) {
+      Integer count = mReleases.get(frame);
+      mReleases.put(frame, count == null ? 1 : count + 1);
+      mReleaseCount++;
+      notifyAll();
+    }
+
+    synchronized List<String> getResults() {
+      return new ArrayList<String>(mResults);
+    }
+
+    synchronized int getReleaseCount(PreviewFrame frame) {
+      Integer count = mReleases.get(frame);
+      return count == null ? 0 : count;
+    }
+
+    synchronized void awaitReleases(int count) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+      while (mReleaseCount < count) {
+        long remaining = deadline - System.currentTimeMillis();
+        assertTrue("Frames not released: " + (count - mReleaseCount), remaining > 0);
+        wait(remaining);
+      }
+    }
+  }
+
+  /**
+   * Runs completions on the main thread. While held, it keeps them back instead, so that they
+   * can be let through together and in any order.
+   */
+  private final class ResultExecutor implements Executor {
+
+    private final List<Runnable> mHeld = new ArrayList<Runnable>();
+
+    private boolean isHolding = false;
+
+    private int mPosted = 0;
+
+    @Override
+    public synchronized void execute(Runnable runnable) {
+      if (isHolding) {
+        mHeld.add(runnable);
+      } else {
+        mMain.execute(runnable);
+      }
+      mPosted++;
+      notifyAll();
+    }
+
+    synchronized void hold() {
+      isHolding = true;
+    }
+
+    synchronized void release(boolean reversed) {
+      isHolding = false;
+      if (reversed) {
+        Collections.reverse(mHeld);
+      }
+      for (Runnable runnable : mHeld) {
+        mMain.execute(runnable);
+      }
+      mHeld.clear();
+    }
+
+    synchronized void awaitPosted(int count) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+      while (mPosted < count) {
+        long remaining = deadline - System.currentTimeMillis();
+        assertTrue("Completions not posted: " + (count - mPosted), remaining > 0);
+        wait(remaining);
+      }
+    }
+  }
+
+  /** A frame whose decode fails with the exception or error given before reading any pixel. */
+  private static final class ThrowingFrame extends PreviewFrame {
+
+    private final RuntimeException mException;
+
+    private final Error mError;
+
+    ThrowingFrame(RuntimeException exception) {
+      super(new byte[320 * 240 * 3 / 2], 320, 240, 0, false, 0, 0, 320, 240);
+      mException = exception;
+      mError = null;
+    }
+
+    ThrowingFrame(Error error) {
+      super(new byte[320 * 240 * 3 / 2], 320, 240, 0, false, 0, 0, 320, 240);
+      mException = null;
+      mError = error;
+    }
+
+    @Override
+    public byte[] getData() {
+      if (mError != null) {
+        throw mError;
+      }
+      throw mException;
+    }
+  }
+
+  /** A frame whose decode waits, once it has started, until {@link #proceed()} is called. */
+  private static final class BlockingFrame extends PreviewFrame {
+
+    private final CountDownLatch mDecoding = new CountDownLatch(1);
+
+    private final CountDownLatch mProceed = new CountDownLatch(1);
+
+    BlockingFrame(PreviewFrame frame) {
+      super(frame.getData(), frame.getWidth(), frame.getHeight(), frame.getRotation(),
+          frame.isMirrored(), frame.getCropLeft(), frame.getCropTop(), frame.getCropWidth(),
+          frame.getCropHeight());
+    }
+
+    @Override
+    public byte[] getData() {
+      mDecoding.countDown();
+      try {
+        mProceed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return super.getData();
+    }
+
+    void awaitDecoding() throws InterruptedException {
+      assertTrue(mDecoding.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    void proceed() {
+      mProceed.countDown();
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import junit.framework.TestCase;
+
+public class DuplicateFilterTest extends TestCase {
+
+  private final DuplicateFilter mFilter = new DuplicateFilter();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    mFilter.setWindowMillis(1000);
+  }
+
+  public void testFirstSightingIsNew() {
+    assertTrue(mFilter.isNew(result("A", BarcodeFormat.CODE_128), 0));
+  }
+
+  public void testRepeatWithinWindowIsDuplicate() {
+    mFilter.isNew(result("A", BarcodeFormat.CODE_128), 0);
+    assertFalse(mFilter.isNew(result("A", BarcodeFormat.CODE_128), 500));
+  }
+
+  public void testSameTextInOtherFormatIsNew() {
+    mFilter.isNew(result("A", BarcodeFormat.CODE_128), 0);
+    assertTrue(mFilter.isNew(result("A", BarcodeFormat.QR_CODE), 0));
+  }
+
+  public void testReportedAgainAfterWindow() {
+    mFilter.isNew(result("A", BarcodeFormat.CODE_128), 0);
+    assertTrue(mFilter.isNew(result("A", BarcodeFormat.CODE_128), 1500));
+  }
+
+  public void testSightingsExtendTheWindow() {
+    mFilter.isNew(result("A", BarcodeFormat.CODE_128), 0);
+    mFilter.isNew(result("A", BarcodeFormat.CODE_128), 800);
+    assertFalse(mFilter.isNew(result("A", BarcodeFormat.CODE_128), 1600));
+  }
+
+  public void testClearForgetsSightings() {
+    mFilter.isNew(result("A", BarcodeFormat.CODE_128), 0);
+    mFilter.clear();
+    assertTrue(mFilter.isNew(result("A", BarcodeFormat.CODE_128), 10));
+  }
+
+  private static Result result(String text, BarcodeFormat format) {
+    return new Result(text, null, null, format);
+  }
+}
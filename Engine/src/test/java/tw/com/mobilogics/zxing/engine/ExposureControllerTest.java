@@ -0,0 +1,142 @@
+package tw.com.mobilogics.zxing.engine;
+
+import junit.framework.TestCase;
+
+public class ExposureControllerTest extends TestCase {
+
+  private static final long FRAME = 33000000L;
+
+  private static final double DARK = 10;
+
+  private static final double NORMAL = 120;
+
+  private final FakeExposure mExposure = new FakeExposure();
+
+  private final ExposureController mController = new ExposureController(mExposure);
+
+  private long mNow = 0;
+
+  @Override
+  protected void setUp() {
+    mController.setTorchEnabled(true);
+    mController.setLockEnabled(true);
+  }
+
+  public void testNormalLightLeavesTorchOff() {
+    frames(NORMAL, 100);
+    assertEquals(0, mExposure.mTorchCalls);
+  }
+
+  public void testSustainedDarkTurnsTorchOn() {
+    frames(DARK, (int) (ExposureController.DARK_NANOS / FRAME) + 2);
+    assertTrue(mExposure.isTorchOn);
+    assertTrue(mController.isTorchOn());
+  }
+
+  public void testBriefDarkKeepsTorchOff() {
+    for (int i = 0; i < 10; i++) {
+      frames(DARK, 10);
+      frames(NORMAL, 10);
+    }
+    assertFalse(mExposure.isTorchOn);
+  }
+
+  public void testDisabledTorchIsNeverTouched() {
+    mController.setTorchEnabled(false);
+    frames(DARK, 100);
+    assertEquals(0, mExposure.mTorchCalls);
+  }
+
+  public void testSaturationTurnsTorchOffForGood() {
+    frames(DARK, 40);
+    assertTrue(mExposure.isTorchOn);
+    frames(250, 60);
+    assertFalse(mExposure.isTorchOn);
+    frames(DARK, 100);
+    assertFalse(mExposure.isTorchOn);
+    assertEquals(2, mExposure.mTorchCalls);
+  }
+
+  public void testMissingTorchIsNotRetried() {
+    mExposure.hasTorch = false;
+    frames(DARK, 200);
+    assertEquals(1, mExposure.mTorchCalls);
+  }
+
+  public void testCodeLocksUntilItIsGone() {
+    frames(NORMAL, 5);
+    assertFalse(mExposure.isLocked);
+    mController.onCodeSeen(mNow);
+    frames(NORMAL, 1);
+    assertTrue(mExposure.isLocked);
+    frames(NORMAL, (int) (ExposureController.CODE_HOLD_NANOS / FRAME) + 1);
+    assertFalse(mExposure.isLocked);
+  }
+
+  public void testDisabledLocksAreNeverTouched() {
+    mController.setLockEnabled(false);
+    mController.onCodeSeen(mNow);
+    frames(NORMAL, 5);
+    assertEquals(0, mExposure.mLockCalls);
+  }
+
+  public void testTorchUnlocksExposureFirst() {
+    mController.onCodeSeen(mNow);
+    frames(DARK, 1);
+    assertTrue(mExposure.isLocked);
+    // Keep the code in view while it stays dark.
+    for (int i = 0; i < 40; i++) {
+      mController.onCodeSeen(mNow);
+      frames(DARK, 1);
+      if (mExposure.isTorchOn) {
+        break;
+      }
+    }
+    assertTrue(mExposure.isTorchOn);
+    assertFalse(mExposure.isLocked);
+  }
+
+  public void testResetForgetsTorchAndCode() {
+    frames(DARK, 40);
+    mController.onCodeSeen(mNow);
+    mController.reset();
+    assertFalse(mController.isTorchOn());
+    frames(NORMAL, 1);
+    assertFalse(mController.isLocked());
+  }
+
+  private void frames(double luminance, int count) {
+    for (int i = 0; i < count; i++) {
+      mNow += FRAME;
+      mController.onFrame(luminance, mNow);
+    }
+  }
+
+  private static final class FakeExposure implements ExposureController.Exposure {
+
+    boolean hasTorch = true;
+
+    boolean isTorchOn = false;
+
+    boolean isLocked = false;
+
+    int mTorchCalls = 0;
+
+    int mLockCalls = 0;
+
+    @Override
+    public boolean setTorch(boolean on) {
+      mTorchCalls++;
+      if (hasTorch) {
+        isTorchOn = on;
+      }
+      return hasTorch;
+    }
+
+    @Override
+    public void setLocked(boolean locked) {
+      mLockCalls++;
+      isLocked = locked;
+    }
+  }
+}
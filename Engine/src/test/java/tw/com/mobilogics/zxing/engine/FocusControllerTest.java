@@ -0,0 +1,177 @@
+package tw.com.mobilogics.zxing.engine;
+
+import junit.framework.TestCase;
+
+public class FocusControllerTest extends TestCase {
+
+  private static final long FRAME = 33000000L;
+
+  private static final long INTERVAL = FocusController.DEFAULT_MIN_INTERVAL_NANOS;
+
+  private static final double SHARP = 400;
+
+  private final FakeFocuser mFocuser = new FakeFocuser();
+
+  private final FocusController mController = new FocusController(mFocuser);
+
+  private long mNow = 0;
+
+  public void testSharpFramesNeverFocus() {
+    for (int i = 0; i < 300; i++) {
+      assertFalse(frame(SHARP));
+    }
+    assertEquals(0, mFocuser.mFocusCalls);
+  }
+
+  public void testBlurryFramesFocusAfterTheSettlingInterval() {
+    assertFalse(frame(1));
+    mNow += INTERVAL;
+    assertFalse(frame(1));
+    assertTrue(frame(1));
+    assertEquals(1, mFocuser.mFocusCalls);
+    assertTrue(mController.isFocusing());
+  }
+
+  public void testSharpnessDropFocusesAfterConsecutiveFrames() {
+    settle();
+    for (int i = 1; i < FocusController.DROP_FRAMES; i++) {
+      assertFalse(frame(SHARP * 0.3));
+    }
+    assertTrue(frame(SHARP * 0.3));
+  }
+
+  public void testSingleSoftFrameDoesNotFocus() {
+    settle();
+    for (int i = 0; i < 10; i++) {
+      assertFalse(frame(SHARP * 0.3));
+      assertFalse(frame(SHARP));
+    }
+    assertEquals(0, mFocuser.mFocusCalls);
+  }
+
+  public void testFramesWhileFocusingAreIgnored() {
+    settle();
+    focusOnce();
+    for (int i = 0; i < 10; i++) {
+      assertFalse(frame(1));
+    }
+    assertEquals(1, mFocuser.mFocusCalls);
+  }
+
+  public void testFocusesAtMostOncePerInterval() {
+    settle();
+    focusOnce();
+    mController.onFocusComplete(false, mNow);
+    for (int i = 0; i < 10; i++) {
+      assertFalse(frame(1));
+    }
+    mNow += INTERVAL;
+    assertTrue(frame(1));
+  }
+
+  public void testContinuousModeResumesAfterOneShot() {
+    mFocuser.isContinuous = true;
+    settle();
+    focusOnce();
+    mController.onFocusComplete(true, mNow);
+    assertEquals(1, mFocuser.mCancelCalls);
+    assertFalse(mController.isFocusing());
+  }
+
+  public void testAutoModeKeepsFocusLocked() {
+    settle();
+    focusOnce();
+    mController.onFocusComplete(true, mNow);
+    assertEquals(0, mFocuser.mCancelCalls);
+  }
+
+  public void testFocusStartedElsewhereIsNotCancelled() {
+    mFocuser.isContinuous = true;
+    mController.onFocusComplete(true, mNow);
+    assertEquals(0, mFocuser.mCancelCalls);
+  }
+
+  public void testStuckFocusTimesOut() {
+    settle();
+    focusOnce();
+    mNow += FocusController.FOCUS_TIMEOUT_NANOS;
+    assertFalse(frame(1));
+    assertEquals(1, mFocuser.mCancelCalls);
+    assertFalse(mController.isFocusing());
+  }
+
+  public void testRefusedFocusIsRetried() {
+    settle();
+    mFocuser.isAvailable = false;
+    for (int i = 0; i < FocusController.DROP_FRAMES; i++) {
+      assertFalse(frame(1));
+    }
+    mFocuser.isAvailable = true;
+    assertTrue(frame(1));
+  }
+
+  public void testResetWaitsForANewSettlingInterval() {
+    settle();
+    mController.reset();
+    for (int i = 0; i < 10; i++) {
+      assertFalse(frame(1));
+    }
+  }
+
+  public void testConfigureRejectsRatioOfOne() {
+    try {
+      mController.configure(0, 1, 0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  /** Feeds sharp frames until the settling interval has passed. */
+  private void settle() {
+    frame(SHARP);
+    mNow += INTERVAL;
+    frame(SHARP);
+  }
+
+  private void focusOnce() {
+    boolean focused = false;
+    for (int i = 0; i < FocusController.DROP_FRAMES && !focused; i++) {
+      focused = frame(1);
+    }
+    assertTrue(focused);
+  }
+
+  private boolean frame(double sharpness) {
+    mNow += FRAME;
+    return mController.onFrame(sharpness, mNow);
+  }
+
+  private static final class FakeFocuser implements FocusController.Focuser {
+
+    boolean isContinuous = false;
+
+    boolean isAvailable = true;
+
+    int mFocusCalls = 0;
+
+    int mCancelCalls = 0;
+
+    @Override
+    public boolean focus() {
+      if (isAvailable) {
+        mFocusCalls++;
+      }
+      return isAvailable;
+    }
+
+    @Override
+    public void cancelFocus() {
+      mCancelCalls++;
+    }
+
+    @Override
+    public boolean isContinuous() {
+      return isContinuous;
+    }
+  }
+}
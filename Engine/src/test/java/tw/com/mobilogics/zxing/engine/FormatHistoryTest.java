@@ -0,0 +1,53 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.BarcodeFormat;
+
+import junit.framework.TestCase;
+
+public class FormatHistoryTest extends TestCase {
+
+  private final FormatHistory mHistory = new FormatHistory();
+
+  public void testNoLikelyFormatBeforeAnyResult() {
+    assertNull(mHistory.getLikelyFormat());
+  }
+
+  public void testLikelyFormatIsMostFrequentInWindow() {
+    mHistory.configure(3, 5);
+    mHistory.record(BarcodeFormat.QR_CODE);
+    mHistory.record(BarcodeFormat.EAN_13);
+    mHistory.record(BarcodeFormat.EAN_13);
+    assertEquals(BarcodeFormat.EAN_13, mHistory.getLikelyFormat());
+  }
+
+  public void testOldResultsLeaveTheWindow() {
+    mHistory.configure(3, 5);
+    mHistory.record(BarcodeFormat.EAN_13);
+    mHistory.record(BarcodeFormat.EAN_13);
+    mHistory.record(BarcodeFormat.QR_CODE);
+    mHistory.record(BarcodeFormat.QR_CODE);
+    assertEquals(BarcodeFormat.QR_CODE, mHistory.getLikelyFormat());
+  }
+
+  public void testFullScanDueEveryInterval() {
+    mHistory.configure(3, 3);
+    assertFalse(mHistory.isFullScanDue());
+    assertFalse(mHistory.isFullScanDue());
+    assertTrue(mHistory.isFullScanDue());
+    assertFalse(mHistory.isFullScanDue());
+  }
+
+  public void testResizingWindowForgetsResults() {
+    mHistory.record(BarcodeFormat.CODE_128);
+    mHistory.configure(10, 5);
+    assertNull(mHistory.getLikelyFormat());
+  }
+
+  public void testRejectsNonPositiveSettings() {
+    try {
+      mHistory.configure(0, 5);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+public class FrameDecoderTest extends TestCase {
+
+  private final FrameDecoder mDecoder = new FrameDecoder(allFormats());
+
+  public void testDownscaledHitSkipsFullResolutionRetry() throws IOException {
+    PreviewFrame frame = load("QR_CODE", "1920x1080");
+    Result expected = new FrameDecoder(allFormats()).newWorker().decode(frame);
+    mDecoder.setDownscaledFirstPass(DownscaleRetryPolicy.ON_FAILURE,
+        FrameDecoder.DEFAULT_MIN_DOWNSCALE_SIZE);
+
+    Result rawResult = mDecoder.newWorker().decode(frame);
+
+    assertNotNull(rawResult);
+    assertEquals(expected.getText(), rawResult.getText());
+    DecodeStatistics statistics = mDecoder.getStatistics();
+    assertEquals(1, statistics.getDownscaledPasses());
+    assertEquals(1.0, statistics.getDownscaledHitRate(), 0);
+    // The half resolution pass ran the only full scan.
+    assertEquals(1, statistics.getFullScanAttempts());
+    // Points found at half resolution are scaled back to the full region.
+    assertPointsNear(expected.getResultPoints(), rawResult.getResultPoints(), 6);
+  }
+
+  public void testPartialPolicyRetriesAtFullResolution() throws IOException {
+    mDecoder.setDownscaledFirstPass(DownscaleRetryPolicy.ON_FAILURE_OR_PARTIAL,
+        FrameDecoder.DEFAULT_MIN_DOWNSCALE_SIZE);
+
+    Result[] rawResults = mDecoder.newWorker().decodeMultiple(load("QR_CODE", "1920x1080"));
+
+    // Both passes find the code; the duplicate filter reports it once.
+    assertEquals(2, rawResults.length);
+    assertEquals(rawResults[0].getText(), rawResults[1].getText());
+    DecodeStatistics statistics = mDecoder.getStatistics();
+    assertEquals(1, statistics.getDownscaledPasses());
+    assertEquals(0.0, statistics.getDownscaledHitRate(), 0);
+    assertEquals(2, statistics.getFullScanAttempts());
+  }
+
+  public void testFailurePolicyKeepsDownscaledResultsInContinuousMode() throws IOException {
+    mDecoder.setDownscaledFirstPass(DownscaleRetryPolicy.ON_FAILURE,
+        FrameDecoder.DEFAULT_MIN_DOWNSCALE_SIZE);
+
+    Result[] rawResults = mDecoder.newWorker().decodeMultiple(load("QR_CODE", "1920x1080"));
+
+    assertEquals(1, rawResults.length);
+    assertEquals(1, mDecoder.getStatistics().getFullScanAttempts());
+  }
+
+  public void testTrackedResultPointsAreInFullRegionCoordinates() throws IOException {
+    FrameCorpus.Entry entry = FrameCorpus.find("QR_CODE", "1280x720", "0", "0");
+    byte[] data = FrameCorpus.load(entry);
+    // A decoded region that does not start at the frame origin, like a view finder.
+    PreviewFrame frame = new PreviewFrame(data, 1280, 720, 0, false, 100, 50, 1080, 640);
+    mDecoder.setRegionTracking(true);
+    FrameDecoder.Worker worker = mDecoder.newWorker();
+
+    Result full = worker.decode(frame);
+    Result tracked = worker.decode(frame);
+
+    assertNotNull(full);
+    assertNotNull(tracked);
+    assertEquals(full.getText(), tracked.getText());
+    DecodeStatistics statistics = mDecoder.getStatistics();
+    assertEquals(1, statistics.getTrackedPasses());
+    assertEquals(1.0, statistics.getTrackedHitRate(), 0);
+    assertPointsNear(full.getResultPoints(), tracked.getResultPoints(), 1);
+  }
+
+  public void testTrackingRunsFullDecodeAtCadence() throws IOException {
+    PreviewFrame frame = load("QR_CODE", "1280x720");
+    mDecoder.setRegionTracking(true);
+    mDecoder.getRegionTracker().configure(3, RegionTracker.DEFAULT_MAX_MISSES);
+    FrameDecoder.Worker worker = mDecoder.newWorker();
+
+    for (int i = 0; i < 7; i++) {
+      assertNotNull(worker.decode(frame));
+    }
+
+    // Full decodes on the first, fourth and seventh frames, tracked ones in between.
+    assertEquals(4, mDecoder.getStatistics().getTrackedPasses());
+  }
+
+  public void testLikelyFormatHitSkipsFullScan() throws IOException {
+    PreviewFrame frame = load("QR_CODE", "640x480");
+    mDecoder.setAdaptiveReaderOrder(true);
+    FrameDecoder.Worker worker = mDecoder.newWorker();
+
+    assertNotNull(worker.decode(frame));
+    assertNotNull(worker.decode(frame));
+
+    DecodeStatistics statistics = mDecoder.getStatistics();
+    // Nothing was likely for the first frame; the second needed only the QR Code reader.
+    assertEquals(1, statistics.getFullScanAttempts());
+    assertEquals(1, statistics.getAttempts(BarcodeFormat.QR_CODE));
+    assertEquals(1.0, statistics.getHitRate(BarcodeFormat.QR_CODE), 0);
+  }
+
+  public void testAdaptiveOrderFallsBackToFullScanAtCadence() throws IOException {
+    mDecoder.setAdaptiveReaderOrder(true);
+    mDecoder.getFormatHistory().configure(FormatHistory.DEFAULT_WINDOW_SIZE, 3);
+    FrameDecoder.Worker worker = mDecoder.newWorker();
+    assertNotNull(worker.decode(load("QR_CODE", "640x480")));
+
+    PreviewFrame frame = load("EAN_13", "640x480");
+    // The QR Code reader alone misses the EAN-13 code until the third frame brings a full scan.
+    assertNull(worker.decode(frame));
+    assertNull(worker.decode(frame));
+    Result rawResult = worker.decode(frame);
+
+    assertNotNull(rawResult);
+    assertEquals(BarcodeFormat.EAN_13, rawResult.getBarcodeFormat());
+    DecodeStatistics statistics = mDecoder.getStatistics();
+    assertEquals(3, statistics.getAttempts(BarcodeFormat.QR_CODE));
+    assertEquals(0.0, statistics.getHitRate(BarcodeFormat.QR_CODE), 0);
+    assertEquals(2, statistics.getFullScanAttempts());
+  }
+
+  private static Map<DecodeHintType, Object> allFormats() {
+    Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.allOf(BarcodeFormat.class));
+    return hints;
+  }
+
+  /** The sharp, upright corpus frame of {@code format} at {@code size}. */
+  private static PreviewFrame load(String format, String size) throws IOException {
+    FrameCorpus.Entry entry = FrameCorpus.find(format, size, "0", "0");
+    return entry.newFrame(FrameCorpus.load(entry));
+  }
+
+  private static void assertPointsNear(ResultPoint[] expected, ResultPoint[] actual,
+      float tolerance) {
+    assertEquals(expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i].getX(), actual[i].getX(), tolerance);
+      assertEquals(expected[i].getY(), actual[i].getY(), tolerance);
+    }
+  }
+}
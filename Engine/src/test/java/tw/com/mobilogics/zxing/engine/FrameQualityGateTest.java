@@ -0,0 +1,95 @@
+package tw.com.mobilogics.zxing.engine;
+
+import junit.framework.TestCase;
+
+public class FrameQualityGateTest extends TestCase {
+
+  private static final int WIDTH = 64;
+
+  private static final int HEIGHT = 48;
+
+  private final FrameQualityGate mGate = new FrameQualityGate();
+
+  public void testSharpFramePasses() {
+    assertNull(mGate.check(frame(checkerboard(0)), false));
+    assertEquals(1, mGate.getPassedFrameCount());
+  }
+
+  public void testFrameWhileFocusingIsRejected() {
+    assertEquals(FrameQualityGate.Reason.FOCUSING, mGate.check(frame(checkerboard(0)), true));
+  }
+
+  public void testDarkFrameIsRejected() {
+    assertEquals(FrameQualityGate.Reason.TOO_DARK, mGate.check(frame(flat(5)), false));
+  }
+
+  public void testFlatFrameIsBlurry() {
+    assertEquals(FrameQualityGate.Reason.BLURRY, mGate.check(frame(flat(128)), false));
+    assertEquals(1, mGate.getRejectedFrameCount(FrameQualityGate.Reason.BLURRY));
+  }
+
+  public void testRepeatedFrameIsUnchangedUntilSkipLimit() {
+    byte[] data = checkerboard(0);
+    assertNull(mGate.check(frame(data), false));
+    for (int i = 0; i < FrameQualityGate.MAX_UNCHANGED_SKIPS; i++) {
+      assertEquals(FrameQualityGate.Reason.UNCHANGED, mGate.check(frame(data), false));
+    }
+    assertNull(mGate.check(frame(data), false));
+  }
+
+  public void testMovedSceneIsNotUnchanged() {
+    assertNull(mGate.check(frame(checkerboard(0)), false));
+    assertNull(mGate.check(frame(checkerboard(1)), false));
+  }
+
+  public void testZeroThresholdsDisableChecks() {
+    mGate.configure(0, 0, 0);
+    assertNull(mGate.check(frame(flat(0)), false));
+    assertNull(mGate.check(frame(flat(0)), false));
+  }
+
+  public void testSampleIsMeasuredWithoutCounting() {
+    assertEquals(0.0, mGate.sample(frame(flat(128))).getSharpness(), 1e-9);
+    assertTrue(mGate.sample(frame(checkerboard(0))).getSharpness()
+        > FrameQualityGate.DEFAULT_MIN_SHARPNESS);
+    assertEquals(5.0, mGate.sample(frame(flat(5))).getLuminance(), 1e-9);
+    assertEquals(200.0, mGate.sample(frame(flat(200))).getLuminance(), 1e-9);
+    assertEquals(0, mGate.getPassedFrameCount());
+  }
+
+  public void testOnlyCheckedSamplesCountTowardsCheckTime() {
+    mGate.sample(frame(checkerboard(0)));
+    assertEquals(0, mGate.getCheckNanos());
+    mGate.check(mGate.sample(frame(checkerboard(0))), false);
+    assertTrue(mGate.getCheckNanos() > 0);
+  }
+
+  public void testPassedSampleIsKeptForComparison() {
+    FrameQualityGate.Sample sample = mGate.sample(frame(checkerboard(0)));
+    assertNull(mGate.check(sample, false));
+    assertEquals(FrameQualityGate.Reason.UNCHANGED,
+        mGate.check(mGate.sample(frame(checkerboard(0))), false));
+  }
+
+  private static PreviewFrame frame(byte[] data) {
+    return new PreviewFrame(data, WIDTH, HEIGHT, 90, false, 0, 0, HEIGHT, WIDTH);
+  }
+
+  private static byte[] flat(int luminance) {
+    byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+    for (int i = 0; i < WIDTH * HEIGHT; i++) {
+      data[i] = (byte) luminance;
+    }
+    return data;
+  }
+
+  private static byte[] checkerboard(int shift) {
+    byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        data[y * WIDTH + x] = (byte) ((((x + shift) / 3 + y / 3) & 1) == 0 ? 30 : 220);
+      }
+    }
+    return data;
+  }
+}
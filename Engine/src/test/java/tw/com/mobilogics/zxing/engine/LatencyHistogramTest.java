@@ -0,0 +1,92 @@
+package tw.com.mobilogics.zxing.engine;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+  private final LatencyHistogram mHistogram = new LatencyHistogram();
+
+  public void testBucketsCoverEveryValueInOrder() {
+    long previous = -1;
+    for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+      long lowerBound = LatencyHistogram.lowerBoundOf(i);
+      assertTrue(lowerBound > previous);
+      assertEquals(i, LatencyHistogram.indexOf(lowerBound));
+      if (lowerBound > 0) {
+        assertEquals(i - 1, LatencyHistogram.indexOf(lowerBound - 1));
+      }
+      previous = lowerBound;
+    }
+    assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+  }
+
+  public void testBucketWidthIsAnEighthOfItsValue() {
+    for (int i = LatencyHistogram.SUB_BUCKETS; i < LatencyHistogram.BUCKET_COUNT - 1; i++) {
+      long width = LatencyHistogram.lowerBoundOf(i + 1) - LatencyHistogram.lowerBoundOf(i);
+      assertTrue(width * LatencyHistogram.SUB_BUCKETS <= LatencyHistogram.lowerBoundOf(i));
+    }
+  }
+
+  public void testEmptySnapshot() {
+    LatencyHistogram.Snapshot snapshot = mHistogram.drain();
+    assertEquals(0, snapshot.getCount());
+    assertEquals(0, snapshot.getMeanNanos());
+    assertEquals(0, snapshot.getPercentileNanos(99));
+  }
+
+  public void testCountMeanAndMax() {
+    mHistogram.record(1000);
+    mHistogram.record(3000);
+    mHistogram.record(-5);
+    LatencyHistogram.Snapshot snapshot = mHistogram.drain();
+    assertEquals(3, snapshot.getCount());
+    assertEquals(4000 / 3, snapshot.getMeanNanos());
+    assertEquals(3000, snapshot.getMaxNanos());
+  }
+
+  public void testPercentilesWithinAnEighth() {
+    for (int i = 1; i <= 1000; i++) {
+      mHistogram.record(i * 1000L);
+    }
+    LatencyHistogram.Snapshot snapshot = mHistogram.drain();
+    assertWithinAnEighth(500000, snapshot.getPercentileNanos(50));
+    assertWithinAnEighth(990000, snapshot.getPercentileNanos(99));
+    assertEquals(1000000, snapshot.getPercentileNanos(100));
+  }
+
+  public void testDrainStartsOver() {
+    mHistogram.record(1000);
+    mHistogram.drain();
+    mHistogram.record(10);
+    LatencyHistogram.Snapshot snapshot = mHistogram.drain();
+    assertEquals(1, snapshot.getCount());
+    assertEquals(10, snapshot.getMaxNanos());
+  }
+
+  public void testConcurrentRecordsAreAllCounted() throws InterruptedException {
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 10000; i++) {
+            mHistogram.record(i);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    LatencyHistogram.Snapshot snapshot = mHistogram.drain();
+    assertEquals(40000, snapshot.getCount());
+    assertEquals(9999, snapshot.getMaxNanos());
+    assertEquals(4999, snapshot.getMeanNanos());
+  }
+
+  private static void assertWithinAnEighth(long expected, long actual) {
+    assertTrue("Expected about " + expected + " but was " + actual,
+        Math.abs(actual - expected) <= expected / 8);
+  }
+}
@@ -0,0 +1,165 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+
+import junit.framework.TestCase;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class ParallelReaderTest extends TestCase {
+
+  private final ThreadPoolExecutor mExecutor = new ThreadPoolExecutor(
+      ParallelReader.WORKER_COUNT, ParallelReader.WORKER_COUNT, 0, TimeUnit.MILLISECONDS,
+      new LinkedBlockingQueue<Runnable>());
+
+  @Override
+  protected void tearDown() {
+    mExecutor.shutdownNow();
+  }
+
+  public void testSameResultsAsSequentialDecode() throws Exception {
+    FrameDecoder.Worker sequential = new FrameDecoder(allFormats()).newWorker();
+    FrameDecoder parallelDecoder = new FrameDecoder(allFormats());
+    parallelDecoder.setParallelExecutor(mExecutor);
+    FrameDecoder.Worker parallel = parallelDecoder.newWorker();
+
+    boolean hasOneD = false;
+    boolean hasTwoD = false;
+    for (FrameCorpus.Entry entry : FrameCorpus.entries()) {
+      byte[] data = FrameCorpus.load(entry);
+      Result expected = sequential.decode(entry.newFrame(data));
+      Result actual = parallel.decode(entry.newFrame(data));
+
+      assertEquals(entry.toString(), describe(expected), describe(actual));
+      if (actual != null) {
+        if (isOneD(actual.getBarcodeFormat())) {
+          hasOneD = true;
+        } else {
+          hasTwoD = true;
+        }
+      }
+    }
+    assertTrue(hasOneD);
+    assertTrue(hasTwoD);
+    assertTrue(mExecutor.getCompletedTaskCount() > 0);
+  }
+
+  public void testDecodeReturnsOnlyOnceEveryGroupHasFinished() throws Exception {
+    ParallelReader reader = new ParallelReader();
+    reader.setHints(allFormats());
+    FrameCorpus.Entry entry = FrameCorpus.find("QR_CODE", "640x480", "0", "0");
+    PreviewFrame frame = entry.newFrame(FrameCorpus.load(entry));
+    mExecutor.prestartAllCoreThreads();
+
+    // The 1D group skips the frame if the QR Code group wins before it starts; retry until the
+    // 1D readers, slowed down by the source, lose the race while reading rows.
+    boolean hasReadRows = false;
+    for (int attempt = 0; attempt < 10 && !hasReadRows; attempt++) {
+      WatchedSource source = new WatchedSource(new RotatedLuminanceSource(frame.getData(),
+          frame.getWidth(), frame.getHeight(), frame.getRotation(), frame.isMirrored(),
+          frame.getCropLeft(), frame.getCropTop(), frame.getCropWidth(), frame.getCropHeight(),
+          new YPlaneRotator()));
+
+      Result rawResult =
+          reader.decode(new BinaryBitmap(new HybridBinarizer(source)), source, mExecutor);
+      source.close();
+      awaitIdle();
+
+      assertNotNull(rawResult);
+      assertEquals(BarcodeFormat.QR_CODE, rawResult.getBarcodeFormat());
+      assertEquals(0, source.getReadsAfterClose());
+      hasReadRows = source.getRowReads() > 0;
+    }
+    assertTrue(hasReadRows);
+  }
+
+  /** Lets any group still running finish, so that its reads are counted. */
+  private void awaitIdle() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (mExecutor.getCompletedTaskCount() < mExecutor.getTaskCount()) {
+      assertTrue(System.currentTimeMillis() < deadline);
+      Thread.sleep(5);
+    }
+  }
+
+  private static Map<DecodeHintType, Object> allFormats() {
+    Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.allOf(BarcodeFormat.class));
+    return hints;
+  }
+
+  private static boolean isOneD(BarcodeFormat format) {
+    return format != BarcodeFormat.QR_CODE && format != BarcodeFormat.DATA_MATRIX
+        && format != BarcodeFormat.PDF_417 && format != BarcodeFormat.AZTEC
+        && format != BarcodeFormat.MAXICODE;
+  }
+
+  private static String describe(Result rawResult) {
+    return rawResult == null ? null : rawResult.getBarcodeFormat() + ": " + rawResult.getText();
+  }
+
+  /** Counts the reads of a source, slowing each row down, and those made after it is closed. */
+  private static final class WatchedSource extends LuminanceSource {
+
+    private final LuminanceSource mSource;
+
+    private int mRowReads = 0;
+
+    private int mReadsAfterClose = 0;
+
+    private boolean isClosed = false;
+
+    WatchedSource(LuminanceSource source) {
+      super(source.getWidth(), source.getHeight());
+      mSource = source;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+      read(true);
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException e) {
+        // Readers ignore interrupts, and so does this source.
+      }
+      return mSource.getRow(y, row);
+    }
+
+    @Override
+    public byte[] getMatrix() {
+      read(false);
+      return mSource.getMatrix();
+    }
+
+    private synchronized void read(boolean row) {
+      if (row) {
+        mRowReads++;
+      }
+      if (isClosed) {
+        mReadsAfterClose++;
+      }
+    }
+
+    synchronized void close() {
+      isClosed = true;
+    }
+
+    synchronized int getRowReads() {
+      return mRowReads;
+    }
+
+    synchronized int getReadsAfterClose() {
+      return mReadsAfterClose;
+    }
+  }
+}
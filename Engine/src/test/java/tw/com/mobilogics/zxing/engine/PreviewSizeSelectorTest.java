@@ -0,0 +1,108 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.BarcodeFormat;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PreviewSizeSelectorTest extends TestCase {
+
+  private static final List<PreviewSizeSelector.Size> SIZES = Arrays.asList(
+      new PreviewSizeSelector.Size(1920, 1080),
+      new PreviewSizeSelector.Size(1280, 960),
+      new PreviewSizeSelector.Size(1280, 720),
+      new PreviewSizeSelector.Size(960, 540),
+      new PreviewSizeSelector.Size(800, 480),
+      new PreviewSizeSelector.Size(640, 480),
+      new PreviewSizeSelector.Size(640, 360),
+      new PreviewSizeSelector.Size(320, 240),
+      new PreviewSizeSelector.Size(176, 144));
+
+  private final PreviewSizeSelector mSelector = new PreviewSizeSelector();
+
+  public void testQrCodesNeedFewPixels() {
+    mSelector.setFormats(Arrays.asList(BarcodeFormat.QR_CODE));
+    // A 33 module code over half of 360 pixels gets 5.5 pixels per module.
+    assertEquals(new PreviewSizeSelector.Size(640, 360),
+        mSelector.select(SIZES, 90, 1080, 1920, 1, 1));
+  }
+
+  public void testLongLinearCodesNeedMorePixels() {
+    mSelector.setFormats(Arrays.asList(BarcodeFormat.QR_CODE, BarcodeFormat.CODE_39));
+    // 192 modules at 2 pixels each over half of the width call for 768 upright pixels.
+    assertEquals(new PreviewSizeSelector.Size(1920, 1080),
+        mSelector.select(SIZES, 90, 1080, 1920, 1, 1));
+  }
+
+  public void testLandscapeUsesTheSensorWidth() {
+    mSelector.setFormats(Arrays.asList(BarcodeFormat.CODE_39));
+    assertEquals(new PreviewSizeSelector.Size(960, 540),
+        mSelector.select(SIZES, 0, 1920, 1080, 1, 1));
+  }
+
+  public void testSmallerRegionNeedsLargerSize() {
+    mSelector.setFormats(Arrays.asList(BarcodeFormat.EAN_13));
+    assertEquals(new PreviewSizeSelector.Size(960, 540),
+        mSelector.select(SIZES, 90, 1080, 1920, 1, 1));
+    assertEquals(new PreviewSizeSelector.Size(1280, 720),
+        mSelector.select(SIZES, 90, 1080, 1920, 0.6, 0.3));
+  }
+
+  public void testSquareCodesUseShorterSideOfRegion() {
+    mSelector.setFormats(Arrays.asList(BarcodeFormat.DATA_MATRIX));
+    // 24 modules at 3 pixels each over half the region: a region side of 144 pixels.
+    assertEquals(new PreviewSizeSelector.Size(1280, 720),
+        mSelector.select(SIZES, 0, 1920, 1080, 0.5, 0.2));
+  }
+
+  public void testKeepsToClosestAspectRatio() {
+    mSelector.setFormats(Arrays.asList(BarcodeFormat.QR_CODE));
+    assertEquals(new PreviewSizeSelector.Size(320, 240),
+        mSelector.select(SIZES, 90, 960, 1280, 1, 1));
+  }
+
+  public void testTooSmallSizesAreSkipped() {
+    mSelector.setFormats(Arrays.asList(BarcodeFormat.QR_CODE));
+    mSelector.setSymbolFill(1);
+    List<PreviewSizeSelector.Size> sizes = Arrays.asList(
+        new PreviewSizeSelector.Size(640, 480),
+        new PreviewSizeSelector.Size(160, 120));
+    assertEquals(new PreviewSizeSelector.Size(640, 480),
+        mSelector.select(sizes, 0, 1280, 960, 1, 1));
+  }
+
+  public void testLargestSizeWhenNoneIsDenseEnough() {
+    mSelector.setFormats(Arrays.asList(BarcodeFormat.CODE_39));
+    assertEquals(new PreviewSizeSelector.Size(1920, 1080),
+        mSelector.select(SIZES, 90, 1080, 1920, 0.2, 0.2));
+  }
+
+  public void testDensityScaleMovesTheChoice() {
+    mSelector.setFormats(Arrays.asList(BarcodeFormat.EAN_13));
+    mSelector.setDensityScale(1.5);
+    assertEquals(new PreviewSizeSelector.Size(1280, 720),
+        mSelector.select(SIZES, 90, 1080, 1920, 1, 1));
+  }
+
+  public void testNoSizes() {
+    mSelector.setFormats(Arrays.asList(BarcodeFormat.QR_CODE));
+    assertNull(mSelector.select(Collections.<PreviewSizeSelector.Size>emptyList(),
+        0, 1920, 1080, 1, 1));
+  }
+
+  public void testRejectsInvalidSettings() {
+    try {
+      mSelector.setSymbolFill(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      mSelector.setDensityScale(-1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package tw.com.mobilogics.zxing.engine;
+
+import junit.framework.TestCase;
+
+public class PreviewSizeTunerTest extends TestCase {
+
+  private static final long BUDGET = PreviewSizeTuner.DEFAULT_FRAME_BUDGET_NANOS;
+
+  private final PreviewSizeTuner mTuner = new PreviewSizeTuner();
+
+  public void testWaitsForAFullWindow() {
+    assertFalse(mTuner.update(PreviewSizeTuner.DEFAULT_WINDOW - 1, 0, BUDGET * 2));
+    assertEquals(1.0, mTuner.getScale());
+  }
+
+  public void testSlowDecodingLowersScale() {
+    assertTrue(mTuner.update(30, 0.5, BUDGET * 2));
+    assertEquals(1 / PreviewSizeTuner.STEP, mTuner.getScale(), 1e-9);
+  }
+
+  public void testMissesWithTimeToSpareRaiseScale() {
+    assertTrue(mTuner.update(30, 0, BUDGET / 4));
+    assertEquals(PreviewSizeTuner.STEP, mTuner.getScale(), 1e-9);
+  }
+
+  public void testMissesWithoutTimeToSpareKeepScale() {
+    assertFalse(mTuner.update(30, 0, BUDGET * 3 / 4));
+    assertEquals(1.0, mTuner.getScale());
+  }
+
+  public void testHitsKeepScale() {
+    assertFalse(mTuner.update(30, 0.5, BUDGET / 4));
+  }
+
+  public void testOnlyTheLatestWindowCounts() {
+    // 30 slow scans, then 30 scans so fast that the running mean is back to the budget.
+    assertTrue(mTuner.update(30, 0.5, BUDGET * 2));
+    assertFalse(mTuner.update(60, 0.5, BUDGET));
+    assertEquals(1 / PreviewSizeTuner.STEP, mTuner.getScale(), 1e-9);
+  }
+
+  public void testDoesNotReturnToScaleThatWasTooSlow() {
+    mTuner.configure(10, BUDGET);
+    assertTrue(mTuner.update(10, 0, BUDGET / 4));
+    assertTrue(mTuner.update(20, 0, BUDGET));
+    // Back to 1, the ceiling; missing with time to spare cannot raise it again.
+    assertEquals(1.0, mTuner.getScale(), 1e-9);
+    int attempts = 20;
+    long totalNanos = BUDGET * 20;
+    for (int i = 0; i < 5; i++) {
+      attempts += 10;
+      totalNanos += BUDGET / 10 * 10;
+      assertFalse(mTuner.update(attempts, 0, totalNanos / attempts));
+    }
+  }
+
+  public void testScaleStaysWithinBounds() {
+    mTuner.configure(1, BUDGET);
+    for (int i = 1; i <= 20; i++) {
+      mTuner.update(i, 0.5, BUDGET * 2);
+    }
+    assertEquals(PreviewSizeTuner.MIN_SCALE, mTuner.getScale(), 1e-9);
+  }
+
+  public void testStatisticsResetStartsNewWindow() {
+    mTuner.update(100, 0.5, BUDGET / 4);
+    assertFalse(mTuner.update(10, 0, BUDGET / 4));
+    assertTrue(mTuner.update(30, 0, BUDGET / 4));
+  }
+
+  public void testResetRestoresScale() {
+    mTuner.update(30, 0.5, BUDGET * 2);
+    mTuner.reset();
+    assertEquals(1.0, mTuner.getScale());
+  }
+}
@@ -0,0 +1,70 @@
+package tw.com.mobilogics.zxing.engine;
+
+import junit.framework.TestCase;
+
+public class RegionTrackerTest extends TestCase {
+
+  private final RegionTracker mTracker = new RegionTracker();
+
+  private final int[] mRegion = new int[4];
+
+  public void testNoRegionBeforeAnyResult() {
+    assertFalse(mTracker.getRegion(0, 0, 1280, 720, mRegion));
+  }
+
+  public void testRegionSurroundsResultWithMargin() {
+    mTracker.onFound(500, 300, 600, 340);
+    assertTrue(mTracker.getRegion(0, 0, 1280, 720, mRegion));
+    // Half the longer side plus 16 pixels on every side.
+    assertEquals(434, mRegion[0]);
+    assertEquals(234, mRegion[1]);
+    assertEquals(666, mRegion[2]);
+    assertEquals(406, mRegion[3]);
+  }
+
+  public void testRegionIsClippedToBounds() {
+    mTracker.onFound(10, 10, 110, 50);
+    assertTrue(mTracker.getRegion(0, 0, 1280, 720, mRegion));
+    assertEquals(0, mRegion[0]);
+    assertEquals(0, mRegion[1]);
+  }
+
+  public void testFullScanAtCadence() {
+    mTracker.configure(3, 8);
+    mTracker.onFound(500, 300, 600, 340);
+    assertTrue(mTracker.getRegion(0, 0, 1280, 720, mRegion));
+    assertTrue(mTracker.getRegion(0, 0, 1280, 720, mRegion));
+    assertFalse(mTracker.getRegion(0, 0, 1280, 720, mRegion));
+    assertTrue(mTracker.getRegion(0, 0, 1280, 720, mRegion));
+  }
+
+  public void testMissesGrowRegionThenForgetIt() {
+    mTracker.configure(100, 2);
+    mTracker.onFound(500, 300, 600, 340);
+    mTracker.getRegion(0, 0, 1280, 720, mRegion);
+    int width = mRegion[2] - mRegion[0];
+
+    mTracker.onMissed();
+    mTracker.getRegion(0, 0, 1280, 720, mRegion);
+    assertTrue(mRegion[2] - mRegion[0] > width);
+
+    mTracker.onMissed();
+    assertTrue(mTracker.getRegion(0, 0, 1280, 720, mRegion));
+    mTracker.onMissed();
+    assertFalse(mTracker.getRegion(0, 0, 1280, 720, mRegion));
+  }
+
+  public void testRegionCoveringBoundsMeansFullDecode() {
+    mTracker.onFound(0, 0, 1280, 720);
+    assertFalse(mTracker.getRegion(0, 0, 1280, 720, mRegion));
+  }
+
+  public void testResultResetsMisses() {
+    mTracker.configure(100, 1);
+    mTracker.onFound(500, 300, 600, 340);
+    mTracker.onMissed();
+    mTracker.onFound(500, 300, 600, 340);
+    mTracker.onMissed();
+    assertTrue(mTracker.getRegion(0, 0, 1280, 720, mRegion));
+  }
+}
@@ -0,0 +1,86 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class ReusableHybridBinarizerTest extends TestCase {
+
+  private final ReusableHybridBinarizer.Workspace mWorkspace =
+      new ReusableHybridBinarizer.Workspace();
+
+  public void testMatrixMatchesStockBinarizer() throws NotFoundException {
+    Random random = new Random(7);
+    for (int i = 0; i < 5; i++) {
+      LuminanceSource source = source(noisyBars(123, 77, random), 123, 77);
+      assertEquals(new HybridBinarizer(source).getBlackMatrix(),
+          new ReusableHybridBinarizer(source, mWorkspace).getBlackMatrix());
+    }
+  }
+
+  public void testSmallMatrixMatchesStockBinarizer() throws NotFoundException {
+    LuminanceSource source = source(noisyBars(36, 30, new Random(3)), 36, 30);
+    assertEquals(new HybridBinarizer(source).getBlackMatrix(),
+        new ReusableHybridBinarizer(source, mWorkspace).getBlackMatrix());
+  }
+
+  public void testRowsMatchStockBinarizer() throws NotFoundException {
+    LuminanceSource source = source(noisyBars(123, 77, new Random(5)), 123, 77);
+    HybridBinarizer stock = new HybridBinarizer(source);
+    ReusableHybridBinarizer reusable = new ReusableHybridBinarizer(source, mWorkspace);
+    for (int y = 20; y < 77; y += 11) {
+      assertEquals(stock.getBlackRow(y, null), reusable.getBlackRow(y, new BitArray(123)));
+    }
+  }
+
+  public void testNoAllocationsOnceFrameSizeIsStable() throws NotFoundException {
+    Random random = new Random(11);
+    LuminanceSource first = source(noisyBars(320, 240, random), 320, 240);
+    new ReusableHybridBinarizer(first, mWorkspace).getBlackMatrix();
+    new ReusableHybridBinarizer(first, mWorkspace).getBlackRow(100, null);
+    int allocations = mWorkspace.getAllocationCount();
+
+    for (int i = 0; i < 10; i++) {
+      LuminanceSource source = source(noisyBars(320, 240, random), 320, 240);
+      new ReusableHybridBinarizer(source, mWorkspace).getBlackMatrix();
+      new ReusableHybridBinarizer(source, mWorkspace).getBlackRow(100 + i, null);
+    }
+    assertEquals(allocations, mWorkspace.getAllocationCount());
+  }
+
+  public void testMatrixIsReplacedWhenFrameSizeChanges() throws NotFoundException {
+    BitMatrix first = new ReusableHybridBinarizer(
+        source(noisyBars(320, 240, new Random(1)), 320, 240), mWorkspace).getBlackMatrix();
+    BitMatrix second = new ReusableHybridBinarizer(
+        source(noisyBars(240, 320, new Random(1)), 240, 320), mWorkspace).getBlackMatrix();
+    assertNotSame(first, second);
+    assertEquals(240, second.getWidth());
+  }
+
+  private static LuminanceSource source(byte[] data, int width, int height) {
+    return new PlanarYUVLuminanceSource(data, width, height, 0, 0, width, height, false);
+  }
+
+  /** Vertical bars on a gradient with some noise, so every threshold path is taken. */
+  private static byte[] noisyBars(int width, int height, Random random) {
+    byte[] data = new byte[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int base = (x / 5) % 2 == 0 ? 40 : 200;
+        if (y < height / 4) {
+          base = 150;
+        }
+        int value = base + (x + y) / 8 + random.nextInt(20) - 10;
+        data[y * width + x] = (byte) Math.max(0, Math.min(255, value));
+      }
+    }
+    return data;
+  }
+}
@@ -0,0 +1,96 @@
+package tw.com.mobilogics.zxing.engine;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class RotatedLuminanceSourceTest extends TestCase {
+
+  private static final int DATA_WIDTH = 45;
+
+  private static final int DATA_HEIGHT = 27;
+
+  private static final int[] ROTATIONS = {0, 90, 180, 270};
+
+  private final byte[] mYuv = new byte[DATA_WIDTH * DATA_HEIGHT * 3 / 2];
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    new Random(7).nextBytes(mYuv);
+  }
+
+  public void testMatchesRotateThenCrop() {
+    for (int rotation : ROTATIONS) {
+      for (boolean mirrored : new boolean[] {false, true}) {
+        assertSameLuminance(rotation, mirrored, 0, 0, uprightWidth(rotation),
+            uprightHeight(rotation));
+        assertSameLuminance(rotation, mirrored, 3, 4, 17, 11);
+      }
+    }
+  }
+
+  public void testCropMatchesDirectWindow() {
+    for (int rotation : ROTATIONS) {
+      LuminanceSource cropped = new RotatedLuminanceSource(mYuv, DATA_WIDTH, DATA_HEIGHT,
+          rotation, false, 2, 3, 20, 15, new YPlaneRotator()).crop(4, 5, 10, 7);
+      LuminanceSource direct = new RotatedLuminanceSource(mYuv, DATA_WIDTH, DATA_HEIGHT,
+          rotation, false, 6, 8, 10, 7, new YPlaneRotator());
+      assertEquals(direct.getWidth(), cropped.getWidth());
+      assertEquals(direct.getHeight(), cropped.getHeight());
+      assertSameMatrix(direct.getMatrix(), cropped.getMatrix(), 10 * 7);
+    }
+  }
+
+  public void testRejectsWindowOutsideUprightFrame() {
+    try {
+      new RotatedLuminanceSource(mYuv, DATA_WIDTH, DATA_HEIGHT, 90, false,
+          0, 0, DATA_WIDTH, DATA_HEIGHT, new YPlaneRotator());
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private void assertSameLuminance(int rotation, boolean mirrored,
+      int left, int top, int width, int height) {
+    YPlaneRotator rotator = new YPlaneRotator();
+    byte[] rotated = rotator.rotate(mYuv, DATA_WIDTH, DATA_HEIGHT, 0, 0, DATA_WIDTH, DATA_HEIGHT,
+        rotation, mirrored);
+    LuminanceSource expected = new PlanarYUVLuminanceSource(rotated,
+        rotator.getOutputWidth(), rotator.getOutputHeight(), left, top, width, height, false);
+    // Copy the matrix before the rotator is reused by the source under test.
+    byte[] expectedMatrix = expected.getMatrix().clone();
+
+    LuminanceSource actual = new RotatedLuminanceSource(mYuv, DATA_WIDTH, DATA_HEIGHT,
+        rotation, mirrored, left, top, width, height, rotator);
+
+    assertEquals(width, actual.getWidth());
+    assertEquals(height, actual.getHeight());
+    byte[] row = null;
+    for (int y = 0; y < height; y++) {
+      row = actual.getRow(y, row);
+      for (int x = 0; x < width; x++) {
+        assertEquals(rotation + "/" + mirrored + " at " + x + "," + y,
+            expectedMatrix[y * width + x], row[x]);
+      }
+    }
+    assertSameMatrix(expectedMatrix, actual.getMatrix(), width * height);
+  }
+
+  private static void assertSameMatrix(byte[] expected, byte[] actual, int length) {
+    for (int i = 0; i < length; i++) {
+      assertEquals("index " + i, expected[i], actual[i]);
+    }
+  }
+
+  private static int uprightWidth(int rotation) {
+    return rotation % 180 == 0 ? DATA_WIDTH : DATA_HEIGHT;
+  }
+
+  private static int uprightHeight(int rotation) {
+    return rotation % 180 == 0 ? DATA_HEIGHT : DATA_WIDTH;
+  }
+}
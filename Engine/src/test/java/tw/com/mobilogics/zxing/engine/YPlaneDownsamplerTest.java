@@ -0,0 +1,43 @@
+package tw.com.mobilogics.zxing.engine;
+
+import junit.framework.TestCase;
+
+public class YPlaneDownsamplerTest extends TestCase {
+
+  private final YPlaneDownsampler mDownsampler = new YPlaneDownsampler();
+
+  public void testAveragesEachBlockRoundingToNearest() {
+    byte[] yuv = {
+        0, 4, 10, 10,
+        2, 2, 10, 11,
+        (byte) 255, (byte) 255, 1, 0,
+        (byte) 255, (byte) 254, 0, 0,
+        // chroma
+        0, 0, 0, 0, 0, 0, 0, 0
+    };
+    byte[] output = mDownsampler.downsample(yuv, 4, 4, 0, 0, 2, 2);
+    assertEquals(2, output[0]);
+    assertEquals(10, output[1]);
+    assertEquals(255, output[2] & 0xff);
+    assertEquals(0, output[3]);
+  }
+
+  public void testDownsamplesWindowOnly() {
+    byte[] yuv = new byte[8 * 6];
+    for (int i = 0; i < yuv.length; i++) {
+      yuv[i] = (byte) (i % 8 < 2 ? 200 : 20);
+    }
+    byte[] output = mDownsampler.downsample(yuv, 8, 6, 2, 2, 3, 2);
+    for (int i = 0; i < 6; i++) {
+      assertEquals(20, output[i]);
+    }
+  }
+
+  public void testRejectsWindowOutsideFrame() {
+    try {
+      mDownsampler.downsample(new byte[8 * 6], 8, 6, 4, 0, 3, 3);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package tw.com.mobilogics.zxing.engine;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class YPlaneRotatorTest extends TestCase {
+
+  private static final int[] ROTATIONS = {0, 90, 180, 270};
+
+  private final YPlaneRotator mRotator = new YPlaneRotator();
+
+  public void testMatchesReferenceOnFullFrame() {
+    // 37 x 21 is deliberately not a multiple of the tile size.
+    byte[] yuv = randomFrame(37, 21, 1);
+    for (int degrees : ROTATIONS) {
+      assertRotation(yuv, 37, 21, 0, 0, 37, 21, degrees, false);
+      assertRotation(yuv, 37, 21, 0, 0, 37, 21, degrees, true);
+    }
+  }
+
+  public void testMatchesReferenceOnCroppedWindow() {
+    byte[] yuv = randomFrame(64, 48, 2);
+    for (int degrees : ROTATIONS) {
+      assertRotation(yuv, 64, 48, 5, 7, 33, 19, degrees, false);
+      assertRotation(yuv, 64, 48, 5, 7, 33, 19, degrees, true);
+    }
+  }
+
+  public void testMatchesPreviousPortraitLoop() {
+    int width = 40;
+    int height = 24;
+    byte[] yuv = randomFrame(width, height, 3);
+
+    byte[] expected = new byte[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        expected[x * height + height - y - 1] = yuv[x + y * width];
+      }
+    }
+
+    byte[] actual = mRotator.rotate(yuv, width, height, 0, 0, width, height, 90, false);
+    assertEquals(height, mRotator.getOutputWidth());
+    assertEquals(width, mRotator.getOutputHeight());
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals("index " + i, expected[i], actual[i]);
+    }
+  }
+
+  public void testReusesOutputBuffer() {
+    byte[] yuv = randomFrame(32, 32, 4);
+    byte[] first = mRotator.rotate(yuv, 32, 32, 0, 0, 32, 32, 90, false);
+    byte[] second = mRotator.rotate(yuv, 32, 32, 8, 8, 16, 16, 270, true);
+    assertSame(first, second);
+  }
+
+  public void testRejectsWindowOutsideFrame() {
+    byte[] yuv = randomFrame(16, 16, 5);
+    try {
+      mRotator.rotate(yuv, 16, 16, 8, 0, 16, 16, 90, false);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private void assertRotation(byte[] yuv, int dataWidth, int dataHeight,
+      int left, int top, int width, int height, int degrees, boolean mirror) {
+    byte[] actual =
+        mRotator.rotate(yuv, dataWidth, dataHeight, left, top, width, height, degrees, mirror);
+    int outWidth = mRotator.getOutputWidth();
+    int outHeight = mRotator.getOutputHeight();
+    String label = degrees + (mirror ? " mirrored" : "");
+
+    assertEquals(label, degrees % 180 == 0 ? width : height, outWidth);
+    assertEquals(label, degrees % 180 == 0 ? height : width, outHeight);
+
+    for (int y = 0; y < outHeight; y++) {
+      for (int x = 0; x < outWidth; x++) {
+        byte expected =
+            referencePixel(yuv, dataWidth, left, top, width, height, degrees, mirror, x, y);
+        assertEquals(label + " at " + x + "," + y, expected, actual[y * outWidth + x]);
+      }
+    }
+  }
+
+  /** Looks up the source pixel for output pixel (x, y) by undoing mirror, then rotation. */
+  private static byte referencePixel(byte[] yuv, int dataWidth, int left, int top,
+      int width, int height, int degrees, boolean mirror, int x, int y) {
+    int outWidth = degrees % 180 == 0 ? width : height;
+    if (mirror) {
+      x = outWidth - 1 - x;
+    }
+    int sourceX;
+    int sourceY;
+    switch (degrees) {
+      case 90:
+        sourceX = y;
+        sourceY = height - 1 - x;
+        break;
+      case 180:
+        sourceX = width - 1 - x;
+        sourceY = height - 1 - y;
+        break;
+      case 270:
+        sourceX = width - 1 - y;
+        sourceY = x;
+        break;
+      default:
+        sourceX = x;
+        sourceY = y;
+        break;
+    }
+    return yuv[(top + sourceY) * dataWidth + left + sourceX];
+  }
+
+  private static byte[] randomFrame(int width, int height, long seed) {
+    byte[] yuv = new byte[width * height * 3 / 2];
+    new Random(seed).nextBytes(yuv);
+    return yuv;
+  }
+}
@@ -0,0 +1,45 @@
+package tw.com.mobilogics.zxing.component;
+
+import android.graphics.Rect;
+
+import junit.framework.TestCase;
+
+public class FramingRectMappingTest extends TestCase {
+
+  public void testPreviewFillingTheViewMapsByScaling() {
+    // 1280x720 frame rotated upright to 720x1280, drawn into a 1080x1920 view.
+    Rect mapped = ZXingComponent.mapToPreview(new Rect(135, 600, 945, 1320),
+        new Rect(0, 0, 1080, 1920), 720, 1280, false);
+    assertEquals(new Rect(90, 400, 630, 880), mapped);
+  }
+
+  public void testCenterCroppedPreviewAccountsForOffset() {
+    // The preview is taller than the view, so CameraView centers it and cuts off 72px above.
+    Rect mapped = ZXingComponent.mapToPreview(new Rect(0, 0, 1080, 1776),
+        new Rect(0, -72, 1080, 1848), 720, 1280, false);
+    assertEquals(new Rect(0, 48, 720, 1232), mapped);
+  }
+
+  public void testLandscapeFrameIsNotSwapped() {
+    Rect mapped = ZXingComponent.mapToPreview(new Rect(480, 270, 1440, 810),
+        new Rect(0, 0, 1920, 1080), 1280, 720, false);
+    assertEquals(new Rect(320, 180, 960, 540), mapped);
+  }
+
+  public void testMirroredPreviewFlipsHorizontally() {
+    Rect mapped = ZXingComponent.mapToPreview(new Rect(0, 0, 540, 960),
+        new Rect(0, 0, 1080, 1920), 720, 1280, true);
+    assertEquals(new Rect(360, 0, 720, 640), mapped);
+  }
+
+  public void testRectIsClippedToFrame() {
+    Rect mapped = ZXingComponent.mapToPreview(new Rect(-100, -100, 2000, 3000),
+        new Rect(0, 0, 1080, 1920), 720, 1280, false);
+    assertEquals(new Rect(0, 0, 720, 1280), mapped);
+  }
+
+  public void testRectOutsidePreviewMapsToNull() {
+    assertNull(ZXingComponent.mapToPreview(new Rect(0, 0, 100, 50),
+        new Rect(0, 100, 1080, 1920), 720, 1280, false));
+  }
+}
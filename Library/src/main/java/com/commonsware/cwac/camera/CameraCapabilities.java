@@ -0,0 +1,217 @@
+package com.commonsware.cwac.camera;
+
+import android.annotation.TargetApi;
+import android.hardware.Camera;
+import android.hardware.Camera.Size;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a camera supports, read from its parameters once per camera id and process and kept
+ * sorted, so layout passes and mode lookups neither ask the camera for its parameters nor sort
+ * anything. Sizes are sorted largest area first, FPS ranges highest maximum first.
+ */
+public final class CameraCapabilities {
+
+  private static final Map<Integer, CameraCapabilities> sCache =
+      new HashMap<Integer, CameraCapabilities>();
+
+  private final Size[] mPreviewSizes;
+
+  private final Size[] mPictureSizes;
+
+  private final Size mPreferredPreviewSizeForVideo;
+
+  private final List<String> mFocusModes;
+
+  private final List<String> mFlashModes;
+
+  private final List<String> mSceneModes;
+
+  private final int[][] mPreviewFpsRanges;
+
+  private final int mMaxNumFocusAreas;
+
+  private final int mMaxNumMeteringAreas;
+
+  private final boolean isAutoExposureLockSupported;
+
+  private final boolean isAutoWhiteBalanceLockSupported;
+
+  private final boolean isVideoStabilizationSupported;
+
+  private CameraCapabilities(Camera.Parameters parameters) {
+    mPreviewSizes = sortedSizes(parameters.getSupportedPreviewSizes());
+    mPictureSizes = sortedSizes(parameters.getSupportedPictureSizes());
+    mPreferredPreviewSizeForVideo = parameters.getPreferredPreviewSizeForVideo();
+    mFocusModes = copyOf(parameters.getSupportedFocusModes());
+    mFlashModes = copyOf(parameters.getSupportedFlashModes());
+    mSceneModes = copyOf(parameters.getSupportedSceneModes());
+    mMaxNumFocusAreas = parameters.getMaxNumFocusAreas();
+    mMaxNumMeteringAreas = parameters.getMaxNumMeteringAreas();
+    isAutoExposureLockSupported = parameters.isAutoExposureLockSupported();
+    isAutoWhiteBalanceLockSupported = parameters.isAutoWhiteBalanceLockSupported();
+    isVideoStabilizationSupported = isVideoStabilizationSupported(parameters);
+
+    List<int[]> fpsRanges = parameters.getSupportedPreviewFpsRange();
+    mPreviewFpsRanges = fpsRanges != null
+        ? fpsRanges.toArray(new int[fpsRanges.size()][]) : new int[0][];
+    Arrays.sort(mPreviewFpsRanges, new Comparator<int[]>() {
+      @Override
+      public int compare(int[] lhs, int[] rhs) {
+        int max = compareInts(rhs[Camera.Parameters.PREVIEW_FPS_MAX_INDEX],
+            lhs[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+        return (max != 0 ? max : compareInts(rhs[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+            lhs[Camera.Parameters.PREVIEW_FPS_MIN_INDEX]));
+      }
+    });
+  }
+
+  @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+  private static boolean isVideoStabilizationSupported(Camera.Parameters parameters) {
+    return (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1
+        && parameters.isVideoStabilizationSupported());
+  }
+
+  /**
+   * Returns the capabilities of camera {@code cameraId}, reading them from {@code camera}, which
+   * must be that camera open, the first time only.
+   */
+  public static CameraCapabilities get(int cameraId, Camera camera) {
+    CameraCapabilities capabilities = peek(cameraId);
+
+    return (capabilities != null ? capabilities : get(cameraId, camera.getParameters()));
+  }
+
+  /** Like {@link #get(int, Camera)}, for a caller that has read the parameters already. */
+  static CameraCapabilities get(int cameraId, Camera.Parameters parameters) {
+    synchronized (sCache) {
+      CameraCapabilities capabilities = sCache.get(cameraId);
+
+      if (capabilities == null) {
+        capabilities = new CameraCapabilities(parameters);
+        sCache.put(cameraId, capabilities);
+      }
+
+      return (capabilities);
+    }
+  }
+
+  /** Returns the capabilities of camera {@code cameraId} if it has been opened before, or null. */
+  public static CameraCapabilities peek(int cameraId) {
+    synchronized (sCache) {
+      return (sCache.get(cameraId));
+    }
+  }
+
+  public List<Size> getPreviewSizes() {
+    return (Collections.unmodifiableList(Arrays.asList(mPreviewSizes)));
+  }
+
+  public List<Size> getPictureSizes() {
+    return (Collections.unmodifiableList(Arrays.asList(mPictureSizes)));
+  }
+
+  /** May be null; cameras that do not tell use their preview sizes for video as well. */
+  public Size getPreferredPreviewSizeForVideo() {
+    return (mPreferredPreviewSizeForVideo);
+  }
+
+  public List<String> getFocusModes() {
+    return (mFocusModes);
+  }
+
+  public List<String> getFlashModes() {
+    return (mFlashModes);
+  }
+
+  public List<String> getSceneModes() {
+    return (mSceneModes);
+  }
+
+  public boolean isSceneModeSupported(String mode) {
+    return (mSceneModes.contains(mode));
+  }
+
+  public boolean isFocusModeSupported(String mode) {
+    return (mFocusModes.contains(mode));
+  }
+
+  public boolean isFlashModeSupported(String mode) {
+    return (mFlashModes.contains(mode));
+  }
+
+  public int getMaxNumFocusAreas() {
+    return (mMaxNumFocusAreas);
+  }
+
+  public int getMaxNumMeteringAreas() {
+    return (mMaxNumMeteringAreas);
+  }
+
+  public boolean isAutoExposureLockSupported() {
+    return (isAutoExposureLockSupported);
+  }
+
+  public boolean isAutoWhiteBalanceLockSupported() {
+    return (isAutoWhiteBalanceLockSupported);
+  }
+
+  /** Always false before API level 15, which introduced video stabilization. */
+  public boolean isVideoStabilizationSupported() {
+    return (isVideoStabilizationSupported);
+  }
+
+  /**
+   * Returns the supported preview FPS ranges, in frames per second times 1000, each indexed by
+   * {@link Camera.Parameters#PREVIEW_FPS_MIN_INDEX} and
+   * {@link Camera.Parameters#PREVIEW_FPS_MAX_INDEX}.
+   */
+  public List<int[]> getPreviewFpsRanges() {
+    List<int[]> ranges = new ArrayList<int[]>(mPreviewFpsRanges.length);
+
+    for (int[] range : mPreviewFpsRanges) {
+      ranges.add(range.clone());
+    }
+
+    return (ranges);
+  }
+
+  Size[] getSortedPreviewSizes() {
+    return (mPreviewSizes);
+  }
+
+  Size[] getSortedPictureSizes() {
+    return (mPictureSizes);
+  }
+
+  /** Copies {@code sizes}, which may be null, into an array sorted largest area first. */
+  static Size[] sortedSizes(List<Size> sizes) {
+    if (sizes == null) {
+      return (new Size[0]);
+    }
+
+    Size[] sorted = sizes.toArray(new Size[sizes.size()]);
+    Arrays.sort(sorted, Collections.reverseOrder(new CameraUtils.SizeComparator()));
+    return (sorted);
+  }
+
+  private static List<String> copyOf(List<String> modes) {
+    if (modes == null) {
+      return (Collections.<String>emptyList());
+    }
+
+    return (Collections.unmodifiableList(new ArrayList<String>(modes)));
+  }
+
+  private static int compareInts(int lhs, int rhs) {
+    return (lhs < rhs ? -1 : (lhs == rhs ? 0 : 1));
+  }
+}
@@ -0,0 +1,197 @@
+package com.commonsware.cwac.camera;
+
+import android.hardware.Camera;
+import android.hardware.Camera.CameraInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Opens and releases cameras for a {@link CameraView} away from the main thread, and can keep a
+ * stopped camera open for a while so that a quick restart skips opening it again.
+ *
+ * <p>The camera thread has no {@link Looper} on purpose: a camera delivers its callbacks to the
+ * looper of the thread that opened it, or to the main looper if that thread has none, and the
+ * preview callbacks are expected on the main thread. All methods are called from the main thread.
+ */
+class CameraSession {
+
+  interface Callback {
+
+    /** Called on the main thread, unless the open was cancelled in the meantime. */
+    void onCameraOpened(OpenCamera openCamera);
+
+    void onCameraOpenFailed(int cameraId, Exception e);
+  }
+
+  /** A camera opened by the session, with what was read from it on the camera thread. */
+  static final class OpenCamera {
+
+    final Camera mCamera;
+
+    final int mCameraId;
+
+    final CameraInfo mInfo;
+
+    final CameraCapabilities mCapabilities;
+
+    /**
+     * Read right after opening, or as last applied for a camera that was kept warm; null once
+     * used, or if unknown.
+     */
+    Camera.Parameters mParameters;
+
+    /** Whether the camera had been kept open since the previous session. */
+    boolean isWarm = false;
+
+    OpenCamera(Camera camera, int cameraId, CameraInfo info, CameraCapabilities capabilities,
+        Camera.Parameters parameters) {
+      mCamera = camera;
+      mCameraId = cameraId;
+      mInfo = info;
+      mCapabilities = capabilities;
+      mParameters = parameters;
+    }
+  }
+
+  // One thread for every view, so a release always completes before the next open starts.
+  private static final Executor sCameraExecutor =
+      Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "CWAC-Camera");
+          thread.setDaemon(true);
+          return (thread);
+        }
+      });
+
+  private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+  private int mGeneration = 0;
+
+  private OpenCamera mWarmCamera = null;
+
+  private final Runnable mReleaseWarmCamera = new Runnable() {
+    @Override
+    public void run() {
+      releaseWarmCamera();
+    }
+  };
+
+  /**
+   * Opens camera {@code cameraId} and passes it to {@code callback}: at once if it was kept warm,
+   * otherwise once it has been opened on the camera thread.
+   */
+  void open(final int cameraId, final Callback callback) {
+    final int generation = ++mGeneration;
+
+    if (mWarmCamera != null) {
+      mMainHandler.removeCallbacks(mReleaseWarmCamera);
+
+      if (mWarmCamera.mCameraId == cameraId) {
+        OpenCamera warmCamera = mWarmCamera;
+        mWarmCamera = null;
+        callback.onCameraOpened(warmCamera);
+        return;
+      }
+
+      releaseWarmCamera();
+    }
+
+    sCameraExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          final OpenCamera openCamera = openOnCameraThread(cameraId);
+
+          mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+              if (generation == mGeneration) {
+                callback.onCameraOpened(openCamera);
+              } else {
+                release(openCamera.mCamera);
+              }
+            }
+          });
+        } catch (final Exception e) {
+          mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+              if (generation == mGeneration) {
+                callback.onCameraOpenFailed(cameraId, e);
+              }
+            }
+          });
+        }
+      }
+    });
+  }
+
+  private static OpenCamera openOnCameraThread(int cameraId) {
+    Camera camera = Camera.open(cameraId);
+
+    if (camera == null) {
+      throw new RuntimeException("No camera with id " + cameraId);
+    }
+
+    try {
+      CameraInfo info = new CameraInfo();
+      Camera.getCameraInfo(cameraId, info);
+      Camera.Parameters parameters = camera.getParameters();
+      return (new OpenCamera(camera, cameraId, info,
+          CameraCapabilities.get(cameraId, parameters), parameters));
+    } catch (RuntimeException e) {
+      camera.release();
+      throw e;
+    }
+  }
+
+  /** Drops the callback of an open still in progress; the camera is released when it opens. */
+  void cancel() {
+    mGeneration++;
+  }
+
+  /**
+   * Releases a camera that has been stopped, or with a positive {@code keepWarmMillis} keeps it
+   * open that long for the next {@link #open(int, Callback)} of the same camera.
+   */
+  void close(OpenCamera openCamera, long keepWarmMillis) {
+    releaseWarmCamera();
+
+    if (keepWarmMillis > 0) {
+      openCamera.isWarm = true;
+      mWarmCamera = openCamera;
+      mMainHandler.postDelayed(mReleaseWarmCamera, keepWarmMillis);
+    } else {
+      release(openCamera.mCamera);
+    }
+  }
+
+  /** Releases the camera kept warm, if any. */
+  void releaseWarmCamera() {
+    mMainHandler.removeCallbacks(mReleaseWarmCamera);
+
+    if (mWarmCamera != null) {
+      release(mWarmCamera.mCamera);
+      mWarmCamera = null;
+    }
+  }
+
+  private static void release(final Camera camera) {
+    sCameraExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          camera.release();
+        } catch (RuntimeException e) {
+          Log.e(CameraView.TAG, "Could not release the camera", e);
+        }
+      }
+    });
+  }
+}
@@ -17,7 +17,6 @@ package com.commonsware.cwac.camera;
 import android.hardware.Camera;
 import android.hardware.Camera.Size;
 
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
@@ -30,8 +29,25 @@ public class CameraUtils {
                                                   int width,
                                                   int height,
                                                   Camera.Parameters parameters) {
-    double targetRatio=(double)width / height;
     List<Size> sizes=parameters.getSupportedPreviewSizes();
+
+    return(getOptimalPreviewSize(displayOrientation, width, height,
+        sizes.toArray(new Size[sizes.size()])));
+  }
+
+  public static Size getOptimalPreviewSize(int displayOrientation,
+                                                  int width,
+                                                  int height,
+                                                  CameraCapabilities capabilities) {
+    return(getOptimalPreviewSize(displayOrientation, width, height,
+        capabilities.getSortedPreviewSizes()));
+  }
+
+  private static Size getOptimalPreviewSize(int displayOrientation,
+                                                  int width,
+                                                  int height,
+                                                  Size[] sizes) {
+    double targetRatio=(double)width / height;
     Size optimalSize=null;
     double minDiff=Double.MAX_VALUE;
     int targetHeight=height;
@@ -78,11 +94,39 @@ public class CameraUtils {
                                     parameters, 0.0d));
   }
 
+  public static Size getBestAspectPreviewSize(int displayOrientation,
+                                                     int width,
+                                                     int height,
+                                                     CameraCapabilities capabilities) {
+    return(getBestAspectPreviewSize(displayOrientation, width, height,
+                                    capabilities, 0.0d));
+  }
+
   public static Size getBestAspectPreviewSize(int displayOrientation,
                                                      int width,
                                                      int height,
                                                      Camera.Parameters parameters,
                                                      double closeEnough) {
+    // sorts a copy; the list belongs to the parameters
+    return(getBestAspectPreviewSize(displayOrientation, width, height,
+        CameraCapabilities.sortedSizes(parameters.getSupportedPreviewSizes()), closeEnough));
+  }
+
+  public static Size getBestAspectPreviewSize(int displayOrientation,
+                                                     int width,
+                                                     int height,
+                                                     CameraCapabilities capabilities,
+                                                     double closeEnough) {
+    return(getBestAspectPreviewSize(displayOrientation, width, height,
+        capabilities.getSortedPreviewSizes(), closeEnough));
+  }
+
+  /** {@code sizes} must be sorted largest area first. */
+  private static Size getBestAspectPreviewSize(int displayOrientation,
+                                                     int width,
+                                                     int height,
+                                                     Size[] sizes,
+                                                     double closeEnough) {
     double targetRatio=(double)width / height;
     Size optimalSize=null;
     double minDiff=Double.MAX_VALUE;
@@ -91,11 +135,6 @@ public class CameraUtils {
       targetRatio=(double)height / width;
     }
 
-    List<Size> sizes=parameters.getSupportedPreviewSizes();
-
-    Collections.sort(sizes,
-                     Collections.reverseOrder(new SizeComparator()));
-
     for (Size size : sizes) {
       double ratio=(double)size.width / size.height;
 
@@ -113,6 +152,12 @@ public class CameraUtils {
   }
 
 
+  public static Size getSmallestPictureSize(CameraCapabilities capabilities) {
+    Size[] sizes=capabilities.getSortedPictureSizes();
+
+    return(sizes.length > 0 ? sizes[sizes.length - 1] : null);
+  }
+
   public static Size getSmallestPictureSize(Camera.Parameters parameters) {
     Size result=null;
 
@@ -133,15 +178,28 @@ public class CameraUtils {
     return(result);
   }
 
+  public static String findBestFlashModeMatch(CameraCapabilities capabilities,
+                                              String... modes) {
+    return(findBestModeMatch(capabilities.getFlashModes(), modes));
+  }
+
+  public static String findBestFocusModeMatch(CameraCapabilities capabilities,
+                                              String... modes) {
+    return(findBestModeMatch(capabilities.getFocusModes(), modes));
+  }
+
   public static String findBestFlashModeMatch(Camera.Parameters params,
                                               String... modes) {
-    String match=null;
+    return(findBestModeMatch(params.getSupportedFlashModes(), modes));
+  }
 
-    List<String> flashModes=params.getSupportedFlashModes();
+  private static String findBestModeMatch(List<String> supportedModes,
+                                          String... modes) {
+    String match=null;
 
-    if (flashModes != null) {
+    if (supportedModes != null) {
       for (String mode : modes) {
-        if (flashModes.contains(mode)) {
+        if (supportedModes.contains(mode)) {
           match=mode;
           break;
         }
@@ -151,7 +209,7 @@ public class CameraUtils {
     return(match);
   }
 
-  private static class SizeComparator implements
+  static class SizeComparator implements
       Comparator<Size> {
     @Override
     public int compare(Size lhs, Size rhs) {
@@ -19,11 +19,13 @@ import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.Context;
 import android.content.pm.ActivityInfo;
+import android.graphics.Rect;
 import android.hardware.Camera;
 import android.hardware.Camera.AutoFocusCallback;
 import android.hardware.Camera.CameraInfo;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -33,6 +35,8 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 public class CameraView extends ViewGroup implements AutoFocusCallback {
 
@@ -54,18 +58,110 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
 
   private int cameraId = -1;
 
+  private boolean isFacingFront = false;
+
   private boolean isAutoFocusing = false;
 
   private boolean isAutoFocus = false;
 
+  private String mFocusMode = null;
+
+  private Rect mFocusArea = null;
+
+  private AutoFocusCallback mAutoFocusCallback = null;
+
+  private boolean isScanTuning = false;
+
+  private boolean isTorchOn = false;
+
+  private boolean isExposureLocked = false;
+
   private int lastPictureOrientation = -1;
 
   private Camera.PreviewCallback mPreviewCallback = null;
 
+  private PreviewBufferPool mBufferPool = null;
+
+  private int mPreviewBufferCount = 0;
+
   private RecordingHint mRecordingHint = RecordingHint.NONE;
 
   private DeviceProfile mProfile = null;
 
+  private volatile FrameDescriptor mFrameDescriptor = null;
+
+  private PreviewSizeChooser mPreviewSizeChooser = null;
+
+  private CameraCapabilities mCapabilities = null;
+
+  private final CameraSession mSession = new CameraSession();
+
+  private CameraSession.OpenCamera mOpenCamera = null;
+
+  private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+  private final ParameterTransaction mParameters = new ParameterTransaction(mMainHandler);
+
+  private boolean isOpening = false;
+
+  private long mWarmCameraMillis = 0;
+
+  private boolean isSurfaceReady = false;
+
+  private int mSurfaceWidth;
+
+  private int mSurfaceHeight;
+
+  private FirstFrameListener mFirstFrameListener = null;
+
+  private long mOpenRequestedNanos = 0;
+
+  private boolean isWarmStart = false;
+
+  private static volatile boolean sVerboseLogging = false;
+
+  private final CameraSession.Callback mSessionCallback = new CameraSession.Callback() {
+    @Override
+    public void onCameraOpened(CameraSession.OpenCamera openCamera) {
+      cameraOpened(openCamera);
+    }
+
+    @Override
+    public void onCameraOpenFailed(int cameraId, Exception e) {
+      isOpening = false;
+      Log.e(TAG, "Camera is UNKNOWN", e);
+    }
+  };
+
+  // Sits between the camera and mPreviewCallback to time the first frame of each session.
+  private final Camera.PreviewCallback mFrameCallback = new Camera.PreviewCallback() {
+    @Override
+    public void onPreviewFrame(byte[] data, Camera camera) {
+      if (mOpenRequestedNanos != 0) {
+        long latencyNanos = System.nanoTime() - mOpenRequestedNanos;
+        mOpenRequestedNanos = 0;
+
+        if (sVerboseLogging) {
+          Log.v(TAG, "First frame " + latencyNanos / 1000000 + " ms after opening"
+              + (isWarmStart ? ", warm" : ""));
+        }
+
+        if (mFirstFrameListener != null) {
+          mFirstFrameListener.onFirstFrame(latencyNanos, isWarmStart);
+        }
+      }
+
+      mPreviewCallback.onPreviewFrame(data, camera);
+    }
+  };
+
+  /** Reports how long each session took from {@link #onResume()} to its first preview frame. */
+  public interface FirstFrameListener {
+
+    /** Called on the main thread; {@code warmStart} if the camera had been kept open. */
+    void onFirstFrame(long latencyNanos, boolean warmStart);
+  }
+
   public CameraView(Context context) {
     super(context);
     initLayout(context);
@@ -86,40 +182,213 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
     mProfile = DeviceProfile.getInstance(context);
   }
 
+  /** Logs every layout pass; off by default, as measuring happens often. */
+  public static void setVerboseLogging(boolean verboseLogging) {
+    sVerboseLogging = verboseLogging;
+  }
+
+  /**
+   * When enabled, the preview starts in the first of the continuous picture, continuous video,
+   * auto and macro focus modes the camera supports, and with a non-continuous mode focuses once
+   * as it starts. Further focus runs are left to the caller, see {@link #autoFocus()}. Takes
+   * effect on the next preview start.
+   */
   public void setAutoFocus(boolean isAutoFocus) {
     this.isAutoFocus = isAutoFocus;
   }
 
+  /**
+   * When enabled, the preview starts with the highest FPS range the camera supports, its barcode
+   * scene mode and video stabilization, each as far as supported and allowed by the
+   * {@link DeviceProfile}. Higher frame rates mean shorter exposures, so less motion blur and more
+   * frames to decode. Takes effect on the next preview start.
+   */
+  public void setScanTuning(boolean isScanTuning) {
+    this.isScanTuning = isScanTuning;
+  }
 
-  @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+  /**
+   * Turns the torch on or off, and returns whether that worked. Fails without a camera, without
+   * a torch, or where the {@link DeviceProfile} rules the torch out. The torch goes off with the
+   * camera.
+   */
+  public boolean setTorch(boolean on) {
+    if (camera == null || !mProfile.useTorch()) {
+      return (false);
+    }
+
+    String mode = CameraUtils.findBestFlashModeMatch(mCapabilities,
+        on ? Camera.Parameters.FLASH_MODE_TORCH : Camera.Parameters.FLASH_MODE_OFF);
+
+    if (mode == null) {
+      return (false);
+    }
+
+    mParameters.edit().setFlashMode(mode);
+
+    // applied right away, as the caller needs to know whether it worked
+    if (!mParameters.commit()) {
+      return (false);
+    }
+
+    isTorchOn = on;
+    return (true);
+  }
+
+  public boolean isTorchOn() {
+    return (isTorchOn);
+  }
+
+  /**
+   * Locks or unlocks auto exposure and auto white balance, as far as the camera supports it and
+   * the {@link DeviceProfile} allows, within a frame interval. The locks are released with the
+   * camera.
+   */
+  public void setExposureLocked(boolean locked) {
+    if (camera == null || !mProfile.useExposureLocks()) {
+      return;
+    }
+
+    applyExposureLock(mParameters.edit(), locked);
+    isExposureLocked = locked;
+  }
+
+  private void applyExposureLock(Camera.Parameters parameters, boolean locked) {
+    if (mCapabilities.isAutoExposureLockSupported()) {
+      parameters.setAutoExposureLock(locked);
+    }
+
+    if (mCapabilities.isAutoWhiteBalanceLockSupported()) {
+      parameters.setAutoWhiteBalanceLock(locked);
+    }
+  }
+
+  /** Receives the result of every focus run, on the main thread. */
+  public void setAutoFocusCallback(AutoFocusCallback callback) {
+    mAutoFocusCallback = callback;
+  }
+
+  /** The focus mode chosen for the running preview, or null if it was left to the camera. */
+  public String getFocusMode() {
+    return (mFocusMode);
+  }
+
+  /** Whether the camera focuses by itself, with no need for {@link #autoFocus()}. */
+  public boolean isContinuousFocus() {
+    return (Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE.equals(mFocusMode)
+        || Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO.equals(mFocusMode));
+  }
+
+  /**
+   * Focuses and meters on {@code frameRect}, given in the coordinates of the preview frames as
+   * the camera delivers them, before any rotation; null restores the camera's default areas.
+   * Applied to a running preview within a frame interval, and kept for the next ones.
+   */
+  public void setFocusArea(Rect frameRect) {
+    mFocusArea = frameRect != null ? new Rect(frameRect) : null;
+
+    if (camera != null && inPreview) {
+      applyFocusArea(mParameters.edit(), mFrameDescriptor);
+    }
+  }
+
+  private void applyFocusArea(Camera.Parameters parameters, FrameDescriptor descriptor) {
+    List<Camera.Area> areas = null;
+
+    if (mFocusArea != null && descriptor != null) {
+      // Areas span -1000 to 1000 across the field of view, in the orientation of the sensor.
+      Rect area = new Rect(
+          toAreaCoordinate(mFocusArea.left, descriptor.getWidth()),
+          toAreaCoordinate(mFocusArea.top, descriptor.getHeight()),
+          toAreaCoordinate(mFocusArea.right, descriptor.getWidth()),
+          toAreaCoordinate(mFocusArea.bottom, descriptor.getHeight()));
+
+      if (!area.isEmpty()) {
+        areas = Collections.singletonList(new Camera.Area(area, 1000));
+      }
+    }
+
+    if (mCapabilities.getMaxNumFocusAreas() > 0) {
+      parameters.setFocusAreas(areas);
+    }
+
+    if (mCapabilities.getMaxNumMeteringAreas() > 0) {
+      parameters.setMeteringAreas(areas);
+    }
+  }
+
+  private static int toAreaCoordinate(int position, int size) {
+    return (Math.max(-1000, Math.min(1000, position * 2000 / size - 1000)));
+  }
+
+
+  /**
+   * Keeps the camera open for {@code millis} after {@link #onPause()}, so that an
+   * {@link #onResume()} within that time skips opening it again; zero, the default, releases it
+   * right away.
+   */
+  public void setWarmCameraTimeout(long millis) {
+    mWarmCameraMillis = millis;
+  }
+
+  public void setFirstFrameListener(FirstFrameListener listener) {
+    mFirstFrameListener = listener;
+  }
+
+  /**
+   * Opens the camera on a background thread; the preview starts once both the camera and the
+   * preview surface are ready, whichever comes last.
+   */
   public void onResume() {
     addView(previewStrategy.getWidget());
 
-    if (camera == null) {
+    if (camera == null && !isOpening) {
       cameraId = getCameraId();
 
       if (cameraId >= 0) {
-        try {
-          camera = Camera.open(cameraId);
-          if (camera != null && mPreviewCallback != null) {
-            camera.setOneShotPreviewCallback(mPreviewCallback);
-          }
-
-          if (getActivity().getRequestedOrientation()
-              != ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED) {
-            onOrientationChange.enable();
-          }
-
-          setCameraDisplayOrientation();
-        } catch (Exception e) {
-          Log.e(TAG, "Camera is UNKNOWN");
-        }
+        // the previous pool was cleared when its camera closed
+        mBufferPool = mPreviewBufferCount > 0
+            ? new PreviewBufferPool(mPreviewBufferCount, mMainHandler) : null;
+        isOpening = true;
+        mOpenRequestedNanos = System.nanoTime();
+        mSession.open(cameraId, mSessionCallback);
       } else {
         Log.e(TAG, "Camera is NO_CAMERAS_REPORTED");
       }
     }
   }
 
+  private void cameraOpened(CameraSession.OpenCamera openCamera) {
+    isOpening = false;
+    mOpenCamera = openCamera;
+    camera = openCamera.mCamera;
+    mCapabilities = openCamera.mCapabilities;
+    isWarmStart = openCamera.isWarm;
+    // read on the camera thread while opening, or kept with a warm camera
+    mParameters.attach(camera, openCamera.mParameters);
+    openCamera.mParameters = null;
+
+    if (mPreviewCallback != null) {
+      if (mBufferPool != null) {
+        camera.setPreviewCallbackWithBuffer(mFrameCallback);
+      } else {
+        camera.setOneShotPreviewCallback(mFrameCallback);
+      }
+    }
+
+    if (getActivity().getRequestedOrientation()
+        != ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED) {
+      onOrientationChange.enable();
+    }
+
+    setCameraDisplayOrientation();
+
+    if (isSurfaceReady) {
+      previewCreated();
+      initPreview(mSurfaceWidth, mSurfaceHeight);
+    }
+  }
+
   private boolean useFrontFacingCamera = false;
 
   public int getCameraId() {
@@ -154,10 +423,18 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
   }
 
   public void onPause() {
+    if (isOpening) {
+      mSession.cancel();
+      isOpening = false;
+    }
 
     if (camera != null) {
-      camera.setOneShotPreviewCallback(null);
-      previewDestroyed();
+      if (mBufferPool != null) {
+        camera.setPreviewCallbackWithBuffer(null);
+      } else {
+        camera.setOneShotPreviewCallback(null);
+      }
+      closeCamera(mWarmCameraMillis);
     }
 
     removeView(previewStrategy.getWidget());
@@ -165,6 +442,12 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
     lastPictureOrientation = -1;
   }
 
+  @Override
+  protected void onDetachedFromWindow() {
+    super.onDetachedFromWindow();
+    mSession.releaseWarmCamera();
+  }
+
   // based on CameraPreview.java from ApiDemos
 
   @Override
@@ -176,32 +459,13 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
 
     setMeasuredDimension(width, height);
 
-    Log.d(TAG,String.format(" 111111 width : %d , height : %d",width,height));
+    if (sVerboseLogging) {
+      Log.v(TAG, "onMeasure width : " + width + " , height : " + height);
+    }
 
     if (width > 0 && height > 0) {
       if (camera != null) {
-        Camera.Size newSize = null;
-
-        if (getRecordingHint() != RecordingHint.STILL_ONLY){
-          newSize = camera.getParameters().getPreferredPreviewSizeForVideo();
-        }
-
-        try {
-          if (newSize == null || newSize.width * newSize.height < 65536) {
-            newSize =
-                CameraUtils.getBestAspectPreviewSize(
-                    getDisplayOrientation(),
-                    width, height,
-                    camera.getParameters());
-          }
-        } catch (Exception e) {
-          Log.e(getClass().getSimpleName(),
-              "Could not work with camera parameters?",
-              e);
-          // TODO get this out to library clients
-        }
-
-        Log.d(TAG,String.format(" 111111 newSize.width : %d , newSize.height : %d",newSize.width,newSize.height));
+        Camera.Size newSize = choosePreviewSize(width, height);
 
         if (newSize != null) {
           if (previewSize == null) {
@@ -216,9 +480,44 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
             initPreview(width, height, false);
           }
         }
-        Log.d(TAG,String.format("width : %d , height : %d",previewSize.width, previewSize.height));
+
+        if (sVerboseLogging && previewSize != null) {
+          Log.v(TAG, "onMeasure preview width : " + previewSize.width
+              + " , height : " + previewSize.height);
+        }
+      }
+    }
+  }
+
+  /** The preview size for a view of {@code width} x {@code height}, or null if none fits. */
+  private Camera.Size choosePreviewSize(int width, int height) {
+    Camera.Size newSize = null;
+
+    if (mPreviewSizeChooser != null) {
+      newSize = mPreviewSizeChooser.choosePreviewSize(getDisplayOrientation(),
+          width, height, mCapabilities);
+    }
+
+    if (newSize == null && getRecordingHint() != RecordingHint.STILL_ONLY){
+      newSize = mCapabilities.getPreferredPreviewSizeForVideo();
+    }
+
+    try {
+      if (newSize == null || newSize.width * newSize.height < 65536) {
+        newSize =
+            CameraUtils.getBestAspectPreviewSize(
+                getDisplayOrientation(),
+                width, height,
+                mCapabilities);
       }
+    } catch (Exception e) {
+      Log.e(getClass().getSimpleName(),
+          "Could not work with camera parameters?",
+          e);
+      // TODO get this out to library clients
     }
+
+    return (newSize);
   }
 
   @Override
@@ -263,6 +562,26 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
     return (displayOrientation);
   }
 
+  /** Whether the open camera faces the user, in which case the preview is shown mirrored. */
+  public boolean isFacingFront() {
+    return (isFacingFront);
+  }
+
+  /**
+   * Copies the bounds of the preview surface, in this view's coordinates, into
+   * {@code outRect}. Returns false if the surface has not been laid out yet.
+   */
+  public boolean getPreviewBounds(Rect outRect) {
+    View widget = previewStrategy.getWidget();
+
+    if (widget.getParent() != this || widget.getWidth() <= 0 || widget.getHeight() <= 0) {
+      return (false);
+    }
+
+    outRect.set(widget.getLeft(), widget.getTop(), widget.getRight(), widget.getBottom());
+    return (true);
+  }
+
   public void lockToLandscape(boolean enable) {
     if (enable) {
       getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_SENSOR_LANDSCAPE);
@@ -277,6 +596,56 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
     this.mPreviewCallback = previewCallback;
   }
 
+  /**
+   * With a count above zero, frames are delivered continuously through
+   * {@link Camera#setPreviewCallbackWithBuffer} into that many preallocated buffers, and the
+   * callback has to hand every buffer back with {@link #recyclePreviewBuffer(byte[])}. With zero,
+   * frames are delivered one at a time through {@link Camera#setOneShotPreviewCallback}. Takes
+   * effect on the next {@link #onResume()} that opens the camera; a running preview keeps its
+   * buffers.
+   */
+  public void setPreviewBufferCount(int count) {
+    mPreviewBufferCount = count;
+  }
+
+  /**
+   * Picks the preview size on the next layout pass instead of the default choice; null restores
+   * the default. Call {@link #requestLayout()} to apply a new choice to a running preview.
+   */
+  public void setPreviewSizeChooser(PreviewSizeChooser chooser) {
+    mPreviewSizeChooser = chooser;
+  }
+
+  /** What the open camera supports, or null while no camera is open. */
+  public CameraCapabilities getCapabilities() {
+    return (mCapabilities);
+  }
+
+  /**
+   * Size and format of the frames the preview callback receives, or null while no preview is
+   * configured. Refreshed whenever the preview size changes; safe to call from any thread.
+   */
+  public FrameDescriptor getFrameDescriptor() {
+    return (mFrameDescriptor);
+  }
+
+  public boolean usesPreviewBuffers() {
+    return (mBufferPool != null);
+  }
+
+  /**
+   * Returns a buffer received in the preview callback to the camera. Safe to call from any
+   * thread, as the buffer is handed over on the main thread; buffers from a previous preview size
+   * are ignored.
+   */
+  public void recyclePreviewBuffer(byte[] buffer) {
+    PreviewBufferPool pool = mBufferPool;
+
+    if (pool != null) {
+      pool.recycle(buffer);
+    }
+  }
+
   public void restartPreview() {
     if (!inPreview) {
       startPreview();
@@ -285,13 +654,26 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
 
   public void autoFocus() {
     if (inPreview) {
-      camera.autoFocus(this);
-      isAutoFocusing = true;
+      try {
+        camera.autoFocus(this);
+        isAutoFocusing = true;
+      } catch (RuntimeException e) {
+        // some drivers throw when a focus run is requested too early or too often
+        Log.e(TAG, "Could not start auto focus", e);
+      }
     }
   }
 
   public void cancelAutoFocus() {
-    camera.cancelAutoFocus();
+    if (camera != null) {
+      camera.cancelAutoFocus();
+      isAutoFocusing = false;
+    }
+  }
+
+  /** Whether an auto focus run started by {@link #autoFocus()} has not finished yet. */
+  public boolean isAutoFocusing() {
+    return (isAutoFocusing);
   }
 
   public boolean isAutoFocusAvailable() {
@@ -299,20 +681,22 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
   }
 
   @Override
-  public void onAutoFocus(boolean success, final Camera camera) {
+  public void onAutoFocus(boolean success, Camera camera) {
+    if (camera != this.camera) {
+      // a run started before the camera was closed or kept warm
+      return;
+    }
+
     isAutoFocusing = false;
 
-    if (isAutoFocus)
-      new Handler().postDelayed(new Runnable() {
-        @Override
-        public void run() {
-          if (camera != null && inPreview) {
-            autoFocus();
-          }
-        }
-      }, 1000);
+    if (mAutoFocusCallback != null) {
+      mAutoFocusCallback.onAutoFocus(success, camera);
+    }
   }
+
   void previewCreated() {
+    isSurfaceReady = true;
+
     if (camera != null) {
       try {
         previewStrategy.attach(camera);
@@ -322,14 +706,76 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
     }
   }
 
+  void previewChanged(int width, int height) {
+    mSurfaceWidth = width;
+    mSurfaceHeight = height;
+    initPreview(width, height);
+  }
+
   void previewDestroyed() {
+    isSurfaceReady = false;
+
     if (camera != null) {
-      previewStopped();
-      camera.release();
-      camera = null;
+      closeCamera(0);
     }
   }
 
+  /** Stops the preview and hands the camera back to the session to release or keep warm. */
+  private void closeCamera(long keepWarmMillis) {
+    if (mBufferPool != null) {
+      mBufferPool.clear();
+    }
+    previewStopped();
+
+    if (isAutoFocusing) {
+      try {
+        camera.cancelAutoFocus();
+      } catch (RuntimeException e) {
+        Log.e(TAG, "Could not cancel auto focus", e);
+      }
+      isAutoFocusing = false;
+    }
+
+    if (keepWarmMillis > 0) {
+      // the next session starts out unlit and unlocked
+      if (isTorchOn) {
+        mParameters.edit().setFlashMode(Camera.Parameters.FLASH_MODE_OFF);
+      }
+
+      if (isExposureLocked) {
+        applyExposureLock(mParameters.edit(), false);
+      }
+
+      if (mParameters.commit()) {
+        // saves reading the parameters again when the camera is reused
+        mOpenCamera.mParameters = mParameters.get();
+      } else {
+        keepWarmMillis = 0;
+      }
+    }
+
+    mParameters.detach();
+
+    isTorchOn = false;
+    isExposureLocked = false;
+
+    if (keepWarmMillis > 0) {
+      try {
+        // the surface goes away with the view
+        camera.setPreviewDisplay(null);
+      } catch (IOException e) {
+        handleException(e);
+        keepWarmMillis = 0;
+      }
+    }
+
+    mSession.close(mOpenCamera, keepWarmMillis);
+    camera = null;
+    mOpenCamera = null;
+    mCapabilities = null;
+    mFrameDescriptor = null;
+  }
+
   void previewReset(int width, int height) {
     previewStopped();
     initPreview(width, height);
@@ -347,8 +793,13 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
 
   @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
   public void initPreview(int w, int h, boolean firstRun) {
-    if (camera != null) {
-      Camera.Parameters parameters = camera.getParameters();
+    if (camera != null && previewSize == null && getWidth() > 0 && getHeight() > 0) {
+      // the camera opened after the last layout pass
+      previewSize = choosePreviewSize(getWidth(), getHeight());
+    }
+
+    if (camera != null && previewSize != null) {
+      Camera.Parameters parameters = mParameters.edit();
 
 //      if (w > 0 && h > 0)
 //        parameters.setPreviewSize(w, h);
@@ -359,17 +810,89 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
         parameters.setRecordingHint(getRecordingHint() != RecordingHint.STILL_ONLY);
       }
 
+      if (isScanTuning) {
+        tuneForScanning(parameters);
+      }
+
+      mFocusMode = null;
+
+      if (isAutoFocus) {
+        mFocusMode = CameraUtils.findBestFocusModeMatch(mCapabilities,
+            Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE,
+            Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO,
+            Camera.Parameters.FOCUS_MODE_AUTO,
+            Camera.Parameters.FOCUS_MODE_MACRO);
+
+        if (mFocusMode != null) {
+          parameters.setFocusMode(mFocusMode);
+        }
+      }
+
+      FrameDescriptor descriptor = new FrameDescriptor(previewSize.width, previewSize.height,
+          parameters.getPreviewFormat());
+
+      if (mFocusArea != null) {
+        // the area is relative to the frame size, which may just have changed
+        applyFocusArea(parameters, descriptor);
+      }
+
       requestLayout();
 
-      camera.setParameters(parameters);
+      // applied right away, with whatever else was pending, as the preview starts below
+      if (!mParameters.commit()) {
+        // go on with what the camera kept
+        parameters = mParameters.get();
+
+        Camera.Size size = parameters.getPreviewSize();
+
+        descriptor = new FrameDescriptor(size.width, size.height,
+            parameters.getPreviewFormat());
+      }
+
+      mParameters.updateFrameInterval();
+      mFrameDescriptor = descriptor;
+
+      if (mBufferPool != null && mPreviewCallback != null) {
+        // re-registering the callback drops buffers sized for the previous preview size
+        camera.setPreviewCallbackWithBuffer(mFrameCallback);
+        mBufferPool.allocate(camera, mFrameDescriptor);
+      }
+
       startPreview();
     }
   }
 
+  // the scene mode goes first, as it may override the focus mode chosen after it
+
+  @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+  private void tuneForScanning(Camera.Parameters parameters) {
+    if (mProfile.useBarcodeSceneMode()
+        && mCapabilities.isSceneModeSupported(Camera.Parameters.SCENE_MODE_BARCODE)) {
+      parameters.setSceneMode(Camera.Parameters.SCENE_MODE_BARCODE);
+    }
+
+    if (mProfile.useHighestPreviewFpsRange()) {
+      long maxFps = mProfile.getMaxPreviewFps() * 1000L;
+
+      // sorted highest maximum first, then highest minimum, so fixed high rates win
+      for (int[] range : mCapabilities.getPreviewFpsRanges()) {
+        if (range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] <= maxFps) {
+          parameters.setPreviewFpsRange(range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+              range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+          break;
+        }
+      }
+    }
+
+    if (mProfile.useVideoStabilization() && mCapabilities.isVideoStabilizationSupported()) {
+      parameters.setVideoStabilization(true);
+    }
+  }
+
   private void startPreview() {
     camera.startPreview();
     inPreview = true;
-    if (isAutoFocus)
+    if (isAutoFocus && !isContinuousFocus())
       autoFocus();
   }
 
@@ -383,14 +906,13 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
   // and http://stackoverflow.com/a/10383164/115145
 
   private void setCameraDisplayOrientation() {
-    CameraInfo info = new CameraInfo();
+    CameraInfo info = mOpenCamera.mInfo;
     int rotation =
         getActivity().getWindowManager().getDefaultDisplay()
             .getRotation();
     int degrees = 0;
     DisplayMetrics dm = new DisplayMetrics();
 
-    Camera.getCameraInfo(cameraId, info);
     getActivity().getWindowManager().getDefaultDisplay().getMetrics(dm);
 
     switch (rotation) {
@@ -408,7 +930,9 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
         break;
     }
 
-    if (info.facing == CameraInfo.CAMERA_FACING_FRONT) {
+    isFacingFront = info.facing == CameraInfo.CAMERA_FACING_FRONT;
+
+    if (isFacingFront) {
       displayOrientation = (info.orientation + degrees) % 360;
       displayOrientation = (360 - displayOrientation) % 360;
     } else {
@@ -432,8 +956,8 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
   // http://developer.android.com/reference/android/hardware/Camera.Parameters.html#setRotation(int)
 
   private int getCameraPictureRotation(int orientation) {
-    CameraInfo info = new CameraInfo();
-    Camera.getCameraInfo(cameraId, info);
+    // read once while opening; this runs for every orientation event
+    CameraInfo info = mOpenCamera.mInfo;
     int rotation = 0;
 
     orientation = (orientation + 45) / 90 * 90;
@@ -468,19 +992,10 @@ public class CameraView extends ViewGroup implements AutoFocusCallback {
         if (newOutputOrientation != outputOrientation) {
           outputOrientation = newOutputOrientation;
 
-          Camera.Parameters params = camera.getParameters();
-
-          params.setRotation(outputOrientation);
-
-          try {
-            camera.setParameters(params);
-            lastPictureOrientation = outputOrientation;
-          } catch (Exception e) {
-            Log.e(getClass().getSimpleName(),
-                "Exception updating camera parameters in orientation change",
-                e);
-            // TODO: get this info out to hosting app
-          }
+          // coalesced with other changes into one setParameters() per frame interval,
+          // as these events arrive many times a second while the device turns
+          mParameters.edit().setRotation(outputOrientation);
+          lastPictureOrientation = outputOrientation;
         }
       }
     }
@@ -39,6 +39,21 @@ abstract public class DeviceProfile {
   
   abstract public RecordingHint getDefaultRecordingHint();
 
+  // scan tuning, see CameraView#setScanTuning()
+
+  abstract public boolean useHighestPreviewFpsRange();
+
+  /** Highest preview frame rate to ask for, in frames per second. */
+  abstract public int getMaxPreviewFps();
+
+  abstract public boolean useBarcodeSceneMode();
+
+  abstract public boolean useVideoStabilization();
+
+  abstract public boolean useExposureLocks();
+
+  abstract public boolean useTorch();
+
   private static volatile DeviceProfile SINGLETON=null;
 
   synchronized public static DeviceProfile getInstance(Context ctxt) {
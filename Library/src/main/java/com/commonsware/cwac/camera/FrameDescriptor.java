@@ -0,0 +1,53 @@
+package com.commonsware.cwac.camera;
+
+import android.graphics.ImageFormat;
+
+/**
+ * Size and format of the preview frames the camera delivers, captured by {@link CameraView} each
+ * time it configures the preview, so that the preview callback never has to ask the camera for
+ * its parameters.
+ */
+public final class FrameDescriptor {
+
+  // NV21, the default preview format
+  private static final int DEFAULT_BITS_PER_PIXEL = 12;
+
+  private final int mWidth;
+
+  private final int mHeight;
+
+  private final int mFormat;
+
+  private final int mBufferSize;
+
+  FrameDescriptor(int width, int height, int format) {
+    int bitsPerPixel = ImageFormat.getBitsPerPixel(format);
+
+    if (bitsPerPixel <= 0) {
+      bitsPerPixel = DEFAULT_BITS_PER_PIXEL;
+    }
+
+    mWidth = width;
+    mHeight = height;
+    mFormat = format;
+    mBufferSize = width * height * bitsPerPixel / 8;
+  }
+
+  public int getWidth() {
+    return mWidth;
+  }
+
+  public int getHeight() {
+    return mHeight;
+  }
+
+  /** One of the {@link ImageFormat} constants. */
+  public int getFormat() {
+    return mFormat;
+  }
+
+  /** Bytes in one frame; a smaller buffer belongs to an earlier, smaller preview size. */
+  public int getBufferSize() {
+    return mBufferSize;
+  }
+}
@@ -0,0 +1,142 @@
+package com.commonsware.cwac.camera;
+
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Holds one {@link Camera.Parameters} snapshot per open camera and applies changes to it in
+ * batches, so that the parameters are read from the camera once and written at most once per
+ * frame interval. Every {@link Camera#getParameters()} and {@link Camera#setParameters} call
+ * flattens and parses the full parameter string and crosses into the camera service, which
+ * stalls the preview when it happens for every orientation or layout change.
+ *
+ * <p>Changes are applied on the handler's thread, the main thread, which is also where the camera
+ * delivers its callbacks, where the preview is started and stopped, and where
+ * {@link PreviewBufferPool} hands buffers back; {@link Camera} is not safe to use from several
+ * threads at once. All methods are called from that thread.
+ */
+class ParameterTransaction {
+
+  /** One frame at 30 frames per second, until the preview FPS range is known. */
+  static final long DEFAULT_FRAME_INTERVAL_MILLIS = 33;
+
+  private final Handler mHandler;
+
+  private Camera mCamera = null;
+
+  private Camera.Parameters mSnapshot = null;
+
+  private boolean isDirty = false;
+
+  private boolean isScheduled = false;
+
+  private long mFrameIntervalMillis = DEFAULT_FRAME_INTERVAL_MILLIS;
+
+  private long mLastApplyMillis = 0;
+
+  private final Runnable mApply = new Runnable() {
+    @Override
+    public void run() {
+      isScheduled = false;
+      commit();
+    }
+  };
+
+  ParameterTransaction(Handler handler) {
+    mHandler = handler;
+  }
+
+  /**
+   * Starts a transaction on {@code camera}, using {@code snapshot} if its parameters have been
+   * read already, or reading them on first use if it is null.
+   */
+  void attach(Camera camera, Camera.Parameters snapshot) {
+    detach();
+    mCamera = camera;
+    mSnapshot = snapshot;
+    mFrameIntervalMillis = DEFAULT_FRAME_INTERVAL_MILLIS;
+  }
+
+  /** Drops changes not applied yet and forgets the camera. */
+  void detach() {
+    mHandler.removeCallbacks(mApply);
+    isScheduled = false;
+    isDirty = false;
+    mCamera = null;
+    mSnapshot = null;
+  }
+
+  boolean isAttached() {
+    return (mCamera != null);
+  }
+
+  /** The parameters as they will be once every pending change is applied; do not change them. */
+  Camera.Parameters get() {
+    if (mSnapshot == null) {
+      mSnapshot = mCamera.getParameters();
+    }
+
+    return (mSnapshot);
+  }
+
+  /**
+   * Returns the snapshot for the caller to change, and schedules its application within a frame
+   * interval of the previous one; changes made in the meantime go out in the same call.
+   */
+  Camera.Parameters edit() {
+    Camera.Parameters parameters = get();
+
+    isDirty = true;
+
+    if (!isScheduled) {
+      long delay = mLastApplyMillis + mFrameIntervalMillis - SystemClock.uptimeMillis();
+
+      isScheduled = true;
+      mHandler.postDelayed(mApply, Math.max(0, delay));
+    }
+
+    return (parameters);
+  }
+
+  /**
+   * Applies pending changes now, for callers that need them in effect before they go on, and
+   * returns false if the camera rejected them. The snapshot is then read again, so that it
+   * matches what the camera kept.
+   */
+  boolean commit() {
+    if (isScheduled) {
+      mHandler.removeCallbacks(mApply);
+      isScheduled = false;
+    }
+
+    if (!isDirty || mCamera == null) {
+      return (true);
+    }
+
+    isDirty = false;
+    mLastApplyMillis = SystemClock.uptimeMillis();
+
+    try {
+      mCamera.setParameters(mSnapshot);
+      return (true);
+    } catch (RuntimeException e) {
+      Log.e(CameraView.TAG, "Camera rejected the parameters", e);
+      mSnapshot = null;
+      return (false);
+    }
+  }
+
+  /** Spaces batches by the frame interval of the highest frame rate in the snapshot. */
+  void updateFrameInterval() {
+    int[] range = new int[2];
+
+    get().getPreviewFpsRange(range);
+
+    int maxFps = range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
+
+    mFrameIntervalMillis = maxFps > 0 ? Math.max(1, 1000000L / maxFps)
+        : DEFAULT_FRAME_INTERVAL_MILLIS;
+  }
+}
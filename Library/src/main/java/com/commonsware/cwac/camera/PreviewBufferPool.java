@@ -0,0 +1,112 @@
+package com.commonsware.cwac.camera;
+
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Preallocated preview buffers for {@link Camera#setPreviewCallbackWithBuffer}. Buffers are
+ * handed back to the camera with {@link #recycle(byte[])} once their consumer is done with them,
+ * which may happen on any thread. {@link Camera} is only used from the main thread, so buffers
+ * recycled elsewhere are queued and handed to the camera from the handler given to the
+ * constructor, a batch per main loop pass.
+ */
+class PreviewBufferPool {
+
+  private final int mBufferCount;
+
+  private final Handler mHandler;
+
+  private byte[][] mBuffers = new byte[0][];
+
+  private Camera mCamera = null;
+
+  private final List<byte[]> mPendingBuffers = new ArrayList<byte[]>();
+
+  private boolean isDrainPosted = false;
+
+  private final Runnable mDrain = new Runnable() {
+    @Override
+    public void run() {
+      drain();
+    }
+  };
+
+  PreviewBufferPool(int bufferCount, Handler mainHandler) {
+    mBufferCount = bufferCount;
+    mHandler = mainHandler;
+  }
+
+  /**
+   * Drops any previous buffers and queues a fresh set sized for the given frames on the camera.
+   * Old buffers may still be in use by a consumer, so they are never reused. Main thread only.
+   */
+  synchronized void allocate(Camera camera, FrameDescriptor descriptor) {
+    int bufferSize = descriptor.getBufferSize();
+
+    mCamera = camera;
+    mPendingBuffers.clear();
+    mBuffers = new byte[mBufferCount][];
+    for (int i = 0; i < mBufferCount; i++) {
+      mBuffers[i] = new byte[bufferSize];
+      mCamera.addCallbackBuffer(mBuffers[i]);
+    }
+  }
+
+  /**
+   * Returns a buffer to the camera, at once on the main thread and through the handler on any
+   * other. Buffers from before the last {@link #allocate} or {@link #clear()} are ignored.
+   */
+  synchronized void recycle(byte[] buffer) {
+    if (mCamera == null || !isOwned(buffer)) {
+      return;
+    }
+
+    if (Looper.myLooper() == mHandler.getLooper()) {
+      mCamera.addCallbackBuffer(buffer);
+      return;
+    }
+
+    mPendingBuffers.add(buffer);
+    if (!isDrainPosted) {
+      isDrainPosted = true;
+      mHandler.post(mDrain);
+    }
+  }
+
+  private synchronized void drain() {
+    isDrainPosted = false;
+
+    if (mCamera != null) {
+      for (byte[] buffer : mPendingBuffers) {
+        // Buffers queued before a new allocate() belong to the previous preview size.
+        if (isOwned(buffer)) {
+          mCamera.addCallbackBuffer(buffer);
+        }
+      }
+    }
+    mPendingBuffers.clear();
+  }
+
+  private boolean isOwned(byte[] buffer) {
+    for (byte[] owned : mBuffers) {
+      if (owned == buffer) {
+        return (true);
+      }
+    }
+
+    return (false);
+  }
+
+  /** Must be called on the main thread before the camera is released. */
+  synchronized void clear() {
+    mHandler.removeCallbacks(mDrain);
+    isDrainPosted = false;
+    mPendingBuffers.clear();
+    mCamera = null;
+    mBuffers = new byte[0][];
+  }
+}
@@ -0,0 +1,17 @@
+package com.commonsware.cwac.camera;
+
+import android.hardware.Camera;
+
+/**
+ * Replaces the preview size {@link CameraView} would pick on its own, which is the preferred
+ * video size or the largest size of the right aspect ratio.
+ */
+public interface PreviewSizeChooser {
+
+  /**
+   * Called from {@link CameraView#onMeasure(int, int)} with the measured size of the view.
+   * Returning null falls back to the default choice.
+   */
+  Camera.Size choosePreviewSize(int displayOrientation, int width, int height,
+      CameraCapabilities capabilities);
+}
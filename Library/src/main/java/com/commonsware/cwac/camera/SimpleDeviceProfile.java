@@ -32,6 +32,12 @@ public class SimpleDeviceProfile extends DeviceProfile {
   private boolean useDeviceOrientation=false;
   private int pictureDelay=0;
   private RecordingHint recordingHint=RecordingHint.NONE;
+  private boolean useHighestPreviewFpsRange=true;
+  private int maxPreviewFps=Integer.MAX_VALUE;
+  private boolean useBarcodeSceneMode=true;
+  private boolean useVideoStabilization=true;
+  private boolean useExposureLocks=true;
+  private boolean useTorch=true;
 
   SimpleDeviceProfile load(XmlPullParser xpp) {
     StringBuilder buf=null;
@@ -94,6 +100,24 @@ public class SimpleDeviceProfile extends DeviceProfile {
     else if ("pictureDelay".equals(name)) {
       pictureDelay=Integer.parseInt(value);
     }
+    else if ("useHighestPreviewFpsRange".equals(name)) {
+      useHighestPreviewFpsRange=Boolean.parseBoolean(value);
+    }
+    else if ("maxPreviewFps".equals(name)) {
+      maxPreviewFps=Integer.parseInt(value);
+    }
+    else if ("useBarcodeSceneMode".equals(name)) {
+      useBarcodeSceneMode=Boolean.parseBoolean(value);
+    }
+    else if ("useVideoStabilization".equals(name)) {
+      useVideoStabilization=Boolean.parseBoolean(value);
+    }
+    else if ("useExposureLocks".equals(name)) {
+      useExposureLocks=Boolean.parseBoolean(value);
+    }
+    else if ("useTorch".equals(name)) {
+      useTorch=Boolean.parseBoolean(value);
+    }
     else if ("recordingHint".equals(name)) {
       String hint=value.toUpperCase();
       
@@ -164,6 +188,48 @@ public class SimpleDeviceProfile extends DeviceProfile {
     return(recordingHint);
   }
 
+  // for devices whose highest FPS range starves exposure,
+  // or that drop frames when asked for it
+
+  @Override
+  public boolean useHighestPreviewFpsRange() {
+    return(useHighestPreviewFpsRange);
+  }
+
+  @Override
+  public int getMaxPreviewFps() {
+    return(maxPreviewFps);
+  }
+
+  // for devices whose barcode scene mode overrides the
+  // focus mode with a fixed one
+
+  @Override
+  public boolean useBarcodeSceneMode() {
+    return(useBarcodeSceneMode);
+  }
+
+  // for devices where stabilization delays or crops
+  // the preview frames
+
+  @Override
+  public boolean useVideoStabilization() {
+    return(useVideoStabilization);
+  }
+
+  // for devices that report exposure and white balance
+  // locks but freeze the preview when they are set
+
+  @Override
+  public boolean useExposureLocks() {
+    return(useExposureLocks);
+  }
+
+  @Override
+  public boolean useTorch() {
+    return(useTorch);
+  }
+
   // based on http://stackoverflow.com/a/9801191/115145
   // and
   // https://github.com/commonsguy/cwac-camera/issues/43#issuecomment-23791446
@@ -42,7 +42,7 @@ class SurfacePreviewStrategy implements PreviewStrategy,
   @Override
   public void surfaceChanged(SurfaceHolder holder, int format,
                              int width, int height) {
-    cameraView.initPreview(width, height);
+    cameraView.previewChanged(width, height);
   }
 
   @Override
@@ -0,0 +1,54 @@
+package tw.com.mobilogics.zxing.component;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Built-in format selections for {@link ZXingComponent#setScanProfile(ScanProfile)}. Every format
+ * left out is a reader that no longer runs on each frame.
+ */
+public enum ScanProfile {
+
+  /** Every format in {@link ZXingComponent#ALL_FORMATS}. */
+  ALL(ZXingComponent.ALL_FORMATS, false),
+
+  /** Point-of-sale product codes: UPC, EAN and GS1 DataBar. */
+  RETAIL_1D(Arrays.asList(
+      BarcodeFormat.UPC_A,
+      BarcodeFormat.UPC_E,
+      BarcodeFormat.EAN_13,
+      BarcodeFormat.EAN_8,
+      BarcodeFormat.RSS_14), false),
+
+  QR_ONLY(Arrays.asList(BarcodeFormat.QR_CODE), false),
+
+  /** Shipping and pallet labels: GS1-128, ITF-14, Code 39 and the common 2D label formats. */
+  LOGISTICS(Arrays.asList(
+      BarcodeFormat.CODE_128,
+      BarcodeFormat.ITF,
+      BarcodeFormat.CODE_39,
+      BarcodeFormat.DATA_MATRIX,
+      BarcodeFormat.QR_CODE,
+      BarcodeFormat.PDF_417), true);
+
+  private final List<BarcodeFormat> mFormats;
+
+  private final boolean isAssumeGs1;
+
+  ScanProfile(List<BarcodeFormat> formats, boolean assumeGs1) {
+    mFormats = Collections.unmodifiableList(formats);
+    isAssumeGs1 = assumeGs1;
+  }
+
+  public List<BarcodeFormat> getFormats() {
+    return mFormats;
+  }
+
+  /** Whether Code 128 symbols are read as GS1-128, with FNC1 handling. */
+  public boolean isAssumeGs1() {
+    return isAssumeGs1;
+  }
+}
@@ -1,33 +1,51 @@
 package tw.com.mobilogics.zxing.component;
 
 import com.google.zxing.BarcodeFormat;
-import com.google.zxing.BinaryBitmap;
 import com.google.zxing.DecodeHintType;
-import com.google.zxing.MultiFormatReader;
-import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.ReaderException;
+import com.google.zxing.LuminanceSource;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
 
+import com.commonsware.cwac.camera.CameraCapabilities;
 import com.commonsware.cwac.camera.CameraView;
+import com.commonsware.cwac.camera.FrameDescriptor;
+import com.commonsware.cwac.camera.PreviewSizeChooser;
 
 import android.content.Context;
-import android.content.res.Configuration;
-import android.graphics.Point;
 import android.graphics.Rect;
 import android.hardware.Camera;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
 import android.widget.FrameLayout;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
-import me.dm7.barcodescanner.core.DisplayUtils;
 import me.dm7.barcodescanner.core.ViewFinderView;
+import tw.com.mobilogics.zxing.engine.DecodePipeline;
+import tw.com.mobilogics.zxing.engine.DecodeStatistics;
+import tw.com.mobilogics.zxing.engine.DownscaleRetryPolicy;
+import tw.com.mobilogics.zxing.engine.ExposureController;
+import tw.com.mobilogics.zxing.engine.FocusController;
+import tw.com.mobilogics.zxing.engine.FrameDecoder;
+import tw.com.mobilogics.zxing.engine.FrameQualityGate;
+import tw.com.mobilogics.zxing.engine.ParallelReader;
+import tw.com.mobilogics.zxing.engine.PipelineMetrics;
+import tw.com.mobilogics.zxing.engine.PreviewFrame;
+import tw.com.mobilogics.zxing.engine.PreviewSizeSelector;
+import tw.com.mobilogics.zxing.engine.PreviewSizeTuner;
+import tw.com.mobilogics.zxing.engine.RotatedLuminanceSource;
+import tw.com.mobilogics.zxing.engine.YPlaneRotator;
 
 /**
  * Created by chuck on 2014/9/15.
@@ -38,18 +56,148 @@ public class ZXingComponent extends FrameLayout implements Camera.PreviewCallbac
 
   private static final String TAG = ZXingComponent.class.getName();
 
+  private static final int DEFAULT_PREVIEW_BUFFER_COUNT = 3;
+
+  private static final long PREVIEW_SIZE_TUNING_INTERVAL_MILLIS = 1000;
+
+  /** Region assumed while the view finder has not been laid out, about its size on phones. */
+  private static final double UNKNOWN_REGION_FRACTION = 0.5;
+
+  private static volatile boolean sVerboseLogging = false;
+
   private ResultHandler mResultHandler = null;
 
   private CameraView mCameraView;
 
-  private MultiFormatReader mMultiFormatReader;
+  private FrameDecoder mFrameDecoder;
+
+  private List<BarcodeFormat> mFormats = ALL_FORMATS;
+
+  private boolean isTryHarder = false;
+
+  private String mCharacterSet = null;
+
+  private boolean isAssumeGs1 = false;
 
   private ViewFinderView mViewFinderView;
 
   private Rect mFramingRectInPreview;
 
+  private int mFramingRectPreviewWidth;
+
+  private int mFramingRectPreviewHeight;
+
+  private int mFramingRectRotation;
+
+  private final Rect mFramingRectPreviewBounds = new Rect();
+
+  private final Rect mPreviewBounds = new Rect();
+
+  private boolean isCropToViewFinder = false;
+
+  private DecodePipeline mDecodePipeline;
+
+  private final FrameQualityGate mQualityGate = new FrameQualityGate();
+
+  private boolean isQualityGateEnabled = false;
+
+  private boolean isDownscaledFirstPass = false;
+
+  private DownscaleRetryPolicy mDownscaleRetryPolicy = DownscaleRetryPolicy.ON_FAILURE;
+
+  private int mMinDownscaleSize = FrameDecoder.DEFAULT_MIN_DOWNSCALE_SIZE;
+
+  private boolean isParallelDecoding = false;
+
+  private ExecutorService mParallelExecutor;
+
+  private PipelineMetrics mMetrics = null;
+
+  private PipelineMetrics.Listener mMetricsListener = null;
+
+  private long mMetricsIntervalMillis;
+
+  private final Runnable mMetricsReporter = new Runnable() {
+    @Override
+    public void run() {
+      reportMetrics();
+      postDelayed(this, mMetricsIntervalMillis);
+    }
+  };
+
+  private final PreviewSizeSelector mPreviewSizeSelector = new PreviewSizeSelector();
+
+  private final PreviewSizeTuner mPreviewSizeTuner = new PreviewSizeTuner();
+
+  private boolean isScanOrientedPreviewSize = false;
+
+  private boolean isPreviewSizeTuning = false;
+
+  private final PreviewSizeChooser mPreviewSizeChooser = new PreviewSizeChooser() {
+    @Override
+    public Camera.Size choosePreviewSize(int displayOrientation, int width, int height,
+        CameraCapabilities capabilities) {
+      return chooseScanOrientedPreviewSize(displayOrientation, width, height, capabilities);
+    }
+  };
+
+  private final Runnable mPreviewSizeTuning = new Runnable() {
+    @Override
+    public void run() {
+      tunePreviewSize();
+      postDelayed(this, PREVIEW_SIZE_TUNING_INTERVAL_MILLIS);
+    }
+  };
+
+  private boolean isAutoFocus = false;
+
+  private final FocusController mFocusController =
+      new FocusController(new FocusController.Focuser() {
+        @Override
+        public boolean focus() {
+          mCameraView.autoFocus();
+          return mCameraView.isAutoFocusing();
+        }
+
+        @Override
+        public void cancelFocus() {
+          mCameraView.cancelAutoFocus();
+        }
+
+        @Override
+        public boolean isContinuous() {
+          return mCameraView.isContinuousFocus();
+        }
+      });
+
+  private boolean isAutoTorch = false;
+
+  private boolean isExposureLockOnCode = false;
+
+  private final ExposureController mExposureController =
+      new ExposureController(new ExposureController.Exposure() {
+        @Override
+        public boolean setTorch(boolean on) {
+          return mCameraView.setTorch(on);
+        }
+
+        @Override
+        public void setLocked(boolean locked) {
+          mCameraView.setExposureLocked(locked);
+        }
+      });
+
+  /** The framing rectangle the focus area was last set from. */
+  private Rect mFocusAreaRect = null;
+
   private boolean isOpen = false;
 
+  private boolean isDecodingPaused = false;
+
+  private boolean isPauseOnResult = false;
+
+  private boolean isContinuousScanning = false;
+
   static {
     ALL_FORMATS.add(BarcodeFormat.UPC_A);
     ALL_FORMATS.add(BarcodeFormat.UPC_E);
@@ -69,174 +217,785 @@ public class ZXingComponent extends FrameLayout implements Camera.PreviewCallbac
   public ZXingComponent(Context context) {
     super(context);
     initMultiFormatReader();
+    initDecodePipeline();
     setupLayout();
   }
 
   public ZXingComponent(Context context, AttributeSet attrs) {
     super(context, attrs);
     initMultiFormatReader();
+    initDecodePipeline();
     setupLayout();
   }
 
   public ZXingComponent(Context context, AttributeSet attrs, int defStyle) {
     super(context, attrs, defStyle);
     initMultiFormatReader();
+    initDecodePipeline();
     setupLayout();
   }
 
+  /**
+   * When enabled, the camera focuses continuously if it can, and otherwise once as the preview
+   * starts. From then on, a single focus run is started only when the preview turns blurry, see
+   * {@link FocusController}. With {@link #setCropToViewFinder(boolean)}, focus and metering are
+   * also set to the view finder rectangle.
+   */
   public void setAutoFocus(boolean isAutoFocus) {
+    this.isAutoFocus = isAutoFocus;
     mCameraView.setAutoFocus(isAutoFocus);
   }
 
+  /**
+   * When enabled, the preview runs at the highest frame rate the camera supports, in its barcode
+   * scene mode and with video stabilization, as far as the device profile allows. Takes effect on
+   * the next {@link #start()}.
+   */
+  public void setScanTuning(boolean scanTuning) {
+    mCameraView.setScanTuning(scanTuning);
+  }
+
+  /** When enabled, the torch goes on while the preview stays dark; see ExposureController. */
+  public void setAutoTorch(boolean autoTorch) {
+    isAutoTorch = autoTorch;
+    mExposureController.setTorchEnabled(autoTorch);
+  }
+
+  /**
+   * When enabled, auto exposure and white balance lock while codes are being read, so the camera
+   * does not re-meter on the label it is pointed at.
+   */
+  public void setExposureLockOnCode(boolean lockOnCode) {
+    isExposureLockOnCode = lockOnCode;
+    mExposureController.setLockEnabled(lockOnCode);
+  }
+
+  /** See {@link FocusController#configure(double, double, long)}. */
+  public void configureFocusControl(double minSharpness, double dropRatio,
+      long minIntervalMillis) {
+    mFocusController.configure(minSharpness, dropRatio, minIntervalMillis * 1000000L);
+  }
+
   public void setResultHandler(ResultHandler resultHandler) {
     mResultHandler = resultHandler;
   }
 
+  /**
+   * Sets how many preview buffers are preallocated for the camera. Zero falls back to a freshly
+   * allocated frame per callback. Takes effect on the next {@link #start()}.
+   */
+  public void setPreviewBufferCount(int count) {
+    mCameraView.setPreviewBufferCount(count);
+  }
+
+  /**
+   * Keeps the camera open for {@code millis} after {@link #stop()}, so that a {@link #start()}
+   * within that time skips opening it again, which takes several hundred milliseconds on many
+   * devices. Zero, the default, releases the camera right away.
+   */
+  public void setWarmCameraTimeout(long millis) {
+    mCameraView.setWarmCameraTimeout(millis);
+  }
+
+  /** Reports the time from each {@link #start()} to its first preview frame. */
+  public void setFirstFrameListener(CameraView.FirstFrameListener listener) {
+    mCameraView.setFirstFrameListener(listener);
+  }
+
+  /**
+   * Sets how many consecutive frames may be decoded at once, each on its own thread. Results are
+   * still delivered in frame order, and the first one cancels the other frames in flight. Also
+   * raises the preview buffer count to {@code maxFramesInFlight + 2}, so the camera keeps
+   * delivering frames while they are decoded; call {@link #setPreviewBufferCount(int)} afterwards
+   * to override. Decoding picks up the new count at once; a running preview keeps its buffers,
+   * and the new buffer count takes effect on the next {@link #start()}, when the camera is opened
+   * again. Until then fewer frames may be in flight than asked for.
+   */
+  public void setMaxFramesInFlight(int maxFramesInFlight) {
+    mDecodePipeline.setMaxFramesInFlight(maxFramesInFlight);
+    mCameraView.setPreviewBufferCount(
+        Math.max(DEFAULT_PREVIEW_BUFFER_COUNT, maxFramesInFlight + 2));
+  }
+
+  /**
+   * Restricts decoding to the given formats. Readers for formats that are left out are not run at
+   * all, so fewer formats means less work per frame.
+   */
+  public void setFormats(Collection<BarcodeFormat> formats) {
+    mFormats = Collections.unmodifiableList(new ArrayList<BarcodeFormat>(formats));
+    updateHints();
+  }
+
+  public List<BarcodeFormat> getFormats() {
+    return mFormats;
+  }
+
+  /** Spends more time per frame looking for a barcode, trading frame rate for accuracy. */
+  public void setTryHarder(boolean tryHarder) {
+    isTryHarder = tryHarder;
+    updateHints();
+  }
+
+  /** Character set to decode byte segments with when the symbol does not declare one. */
+  public void setCharacterSet(String characterSet) {
+    mCharacterSet = characterSet;
+    updateHints();
+  }
+
+  /** Reads Code 128 symbols as GS1-128, translating FNC1 characters. */
+  public void setAssumeGs1(boolean assumeGs1) {
+    isAssumeGs1 = assumeGs1;
+    updateHints();
+  }
+
+  /** Applies the formats and GS1 setting of a built-in profile. */
+  public void setScanProfile(ScanProfile profile) {
+    mFormats = profile.getFormats();
+    isAssumeGs1 = profile.isAssumeGs1();
+    updateHints();
+  }
+
+  /**
+   * When enabled, each frame is first decoded with only the reader for the format that produced
+   * most of the recent results, and all configured readers run only on every few frames where that
+   * reader found nothing. Pays off when a session scans mostly one symbology.
+   *
+   * @see #configureAdaptiveReaderOrder(int, int)
+   */
+  public void setAdaptiveReaderOrder(boolean adaptiveReaderOrder) {
+    mFrameDecoder.setAdaptiveReaderOrder(adaptiveReaderOrder);
+  }
+
+  /**
+   * @param windowSize how many recent results the likely format is picked from
+   * @param fullScanInterval all readers run on every {@code fullScanInterval}-th frame on which
+   * the likely reader found nothing
+   */
+  public void configureAdaptiveReaderOrder(int windowSize, int fullScanInterval) {
+    mFrameDecoder.getFormatHistory().configure(windowSize, fullScanInterval);
+  }
+
+  /**
+   * When enabled, the 1D readers and each 2D reader run concurrently on a pool of
+   * {@link ParallelReader#WORKER_COUNT} threads that lives from {@link #start()} to
+   * {@link #stop()}, and the first reader to find a barcode wins. Worth it on multi-core devices
+   * scanning both 1D and 2D formats.
+   */
+  public void setParallelDecoding(boolean parallelDecoding) {
+    isParallelDecoding = parallelDecoding;
+    if (isOpen) {
+      if (parallelDecoding) {
+        startParallelExecutor();
+      } else {
+        stopParallelExecutor();
+      }
+    }
+  }
+
+  private void startParallelExecutor() {
+    if (mParallelExecutor == null) {
+      mParallelExecutor = Executors.newFixedThreadPool(ParallelReader.WORKER_COUNT,
+          new ThreadFactory() {
+            private int mCount = 0;
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+              return new Thread(runnable, "ZXingComponent-reader-" + (++mCount));
+            }
+          });
+      mFrameDecoder.setParallelExecutor(mParallelExecutor);
+    }
+  }
+
+  private void stopParallelExecutor() {
+    if (mParallelExecutor != null) {
+      mFrameDecoder.setParallelExecutor(null);
+      // Queued readers still run, as a decode in progress waits for every one of them.
+      mParallelExecutor.shutdown();
+      mParallelExecutor = null;
+    }
+  }
+
+  /**
+   * In continuous mode scanning goes on after a result, each frame is searched for several
+   * barcodes, and every distinct barcode is passed to the {@link ResultHandler} once, without
+   * having to {@link #stop()} and {@link #start()} the camera in between. A barcode is reported
+   * again after it has been out of sight for the duplicate window. Adaptive reader order and
+   * parallel decoding do not apply to continuous mode.
+   *
+   * @see #setDuplicateWindow(long)
+   */
+  public void setContinuousScanning(boolean continuous) {
+    isContinuousScanning = continuous;
+    mDecodePipeline.setContinuous(continuous);
+  }
+
+  /**
+   * How long a barcode must have been out of sight, in milliseconds, before continuous mode reports
+   * it again. Defaults to 5 seconds.
+   */
+  public void setDuplicateWindow(long windowMillis) {
+    mDecodePipeline.setDuplicateWindow(windowMillis);
+  }
+
+  /**
+   * When enabled, frames taken while auto focus runs, and frames that are too dark, blurry or
+   * nearly identical to the last one decoded, are dropped before they reach the readers.
+   *
+   * @see #configureQualityGate(double, int, double)
+   * @see #getQualityGate()
+   */
+  public void setQualityGateEnabled(boolean enabled) {
+    isQualityGateEnabled = enabled;
+  }
+
+  /**
+   * Sets the thresholds of the quality gate; zero disables a check.
+   *
+   * @param minSharpness minimum variance of the Laplacian over the sampled pixels
+   * @param minLuminance minimum mean luminance, from 0 to 255
+   * @param minDifference minimum mean luminance difference to the last frame decoded
+   */
+  public void configureQualityGate(double minSharpness, int minLuminance, double minDifference) {
+    mQualityGate.configure(minSharpness, minLuminance, minDifference);
+  }
+
+  /** Counts of the frames the quality gate let through and rejected, and its own cost. */
+  public FrameQualityGate getQualityGate() {
+    return mQualityGate;
+  }
+
+  /**
+   * When enabled, large frames are decoded at half resolution first, which is about a quarter of
+   * the work and enough for codes that fill a fair part of the frame, and again at full resolution
+   * only when that finds nothing. {@link DecodeStatistics#getDownscaledHitRate()} tells how often
+   * the cheap pass is enough.
+   *
+   * @see #configureDownscaledFirstPass(DownscaleRetryPolicy, int)
+   */
+  public void setDownscaledFirstPass(boolean downscaledFirstPass) {
+    isDownscaledFirstPass = downscaledFirstPass;
+    updateDownscaledFirstPass();
+  }
+
+  /**
+   * @param retryPolicy when to decode again at full resolution
+   * @param minSize shorter side, in pixels, the decoded region needs to be downscaled first;
+   * smaller regions are decoded at full resolution only
+   */
+  public void configureDownscaledFirstPass(DownscaleRetryPolicy retryPolicy, int minSize) {
+    mDownscaleRetryPolicy = retryPolicy;
+    mMinDownscaleSize = minSize;
+    updateDownscaledFirstPass();
+  }
+
+  private void updateDownscaledFirstPass() {
+    mFrameDecoder.setDownscaledFirstPass(isDownscaledFirstPass ? mDownscaleRetryPolicy : null,
+        mMinDownscaleSize);
+  }
+
+  /**
+   * When enabled, once a barcode has been found, the following frames are decoded only in a
+   * region around it, and in full only every few frames. Each frame without a result widens the
+   * region, and after several in a row it is dropped. Cuts the work per frame by the ratio of the
+   * region to the frame, which pays off most in continuous scanning.
+   *
+   * @see #configureRegionTracking(int, int)
+   */
+  public void setRegionTracking(boolean regionTracking) {
+    mFrameDecoder.setRegionTracking(regionTracking);
+  }
+
+  /**
+   * @param fullScanInterval the whole region is decoded on every {@code fullScanInterval}-th frame
+   * while a region is tracked
+   * @param maxMisses frames in a row without a result after which the region is dropped
+   */
+  public void configureRegionTracking(int fullScanInterval, int maxMisses) {
+    mFrameDecoder.getRegionTracker().configure(fullScanInterval, maxMisses);
+  }
+
+  /**
+   * Measures each stage of every frame, from the camera callback to the result, and passes the
+   * figures to {@code listener} on the main thread every {@code intervalMillis} while scanning,
+   * and once more on {@link #stop()}. Timings are kept in fixed-size histograms, so recording costs
+   * a few clock reads and atomic increments per frame. With a null listener nothing is measured.
+   */
+  public void setMetricsListener(PipelineMetrics.Listener listener, long intervalMillis) {
+    if (listener != null && intervalMillis <= 0) {
+      throw new IllegalArgumentException("The reporting interval must be positive");
+    }
+    removeCallbacks(mMetricsReporter);
+    mMetricsListener = listener;
+    mMetricsIntervalMillis = intervalMillis;
+    mMetrics = listener != null ? new PipelineMetrics() : null;
+    mFrameDecoder.setMetrics(mMetrics);
+    mDecodePipeline.setMetrics(mMetrics);
+    if (listener != null && isOpen) {
+      postDelayed(mMetricsReporter, intervalMillis);
+    }
+  }
+
+  /**
+   * Logs every preview frame and layout pass at verbose level, for all instances. Off by default:
+   * the messages cost a string per frame even when logcat drops them.
+   */
+  public static void setVerboseLogging(boolean verboseLogging) {
+    sVerboseLogging = verboseLogging;
+    CameraView.setVerboseLogging(verboseLogging);
+  }
+
+  /**
+   * When enabled, the preview runs at the smallest size on which a typical symbol of each
+   * configured format still gets enough pixels per module in the decoded region, rather than the
+   * largest size of the screen's aspect ratio. Fewer pixels make every stage of every frame
+   * cheaper. Changing the formats or the view finder picks a new size.
+   *
+   * @see #configureScanOrientedPreviewSize(double)
+   * @see #setPreviewSizeAutoTuning(boolean)
+   */
+  public void setScanOrientedPreviewSize(boolean scanOrientedPreviewSize) {
+    isScanOrientedPreviewSize = scanOrientedPreviewSize;
+    mCameraView.setPreviewSizeChooser(scanOrientedPreviewSize ? mPreviewSizeChooser : null);
+    mCameraView.requestLayout();
+  }
+
+  /**
+   * @param symbolFill fraction of the decoded region, above 0 and up to 1, that the smallest
+   * symbol to be read spans; 0.5 by default
+   */
+  public void configureScanOrientedPreviewSize(double symbolFill) {
+    mPreviewSizeSelector.setSymbolFill(symbolFill);
+    if (isScanOrientedPreviewSize) {
+      mCameraView.requestLayout();
+    }
+  }
+
+  /**
+   * When enabled along with {@link #setScanOrientedPreviewSize(boolean)}, the density target is
+   * raised while scans find nothing and decoding has time to spare, and lowered while decoding
+   * takes longer than a frame budget, see {@link PreviewSizeTuner}. Each change restarts the
+   * preview at the new size. The tuning starts over on every {@link #start()}.
+   */
+  public void setPreviewSizeAutoTuning(boolean previewSizeTuning) {
+    isPreviewSizeTuning = previewSizeTuning;
+    removeCallbacks(mPreviewSizeTuning);
+    if (previewSizeTuning && isOpen) {
+      postDelayed(mPreviewSizeTuning, PREVIEW_SIZE_TUNING_INTERVAL_MILLIS);
+    }
+  }
+
+  private void tunePreviewSize() {
+    DecodeStatistics statistics = mFrameDecoder.getStatistics();
+    if (isScanOrientedPreviewSize
+        && mPreviewSizeTuner.update(statistics.getFullScanAttempts(),
+            statistics.getFullScanHitRate(), statistics.getMeanFullScanNanos())) {
+      mPreviewSizeSelector.setDensityScale(mPreviewSizeTuner.getScale());
+      mCameraView.requestLayout();
+    }
+  }
+
+  private Camera.Size chooseScanOrientedPreviewSize(int displayOrientation, int width,
+      int height, CameraCapabilities capabilities) {
+    double regionWidthFraction = 1;
+    double regionHeightFraction = 1;
+    if (isCropToViewFinder) {
+      Rect framingRect = mViewFinderView.getFramingRect();
+      if (framingRect != null && mViewFinderView.getWidth() > 0) {
+        regionWidthFraction = (double) framingRect.width() / mViewFinderView.getWidth();
+        regionHeightFraction = (double) framingRect.height() / mViewFinderView.getHeight();
+      } else {
+        regionWidthFraction = UNKNOWN_REGION_FRACTION;
+        regionHeightFraction = UNKNOWN_REGION_FRACTION;
+      }
+    }
+
+    List<Camera.Size> supported = capabilities.getPreviewSizes();
+    List<PreviewSizeSelector.Size> sizes =
+        new ArrayList<PreviewSizeSelector.Size>(supported.size());
+    for (Camera.Size size : supported) {
+      sizes.add(new PreviewSizeSelector.Size(size.width, size.height));
+    }
+    PreviewSizeSelector.Size selected = mPreviewSizeSelector.select(sizes, displayOrientation,
+        width, height, regionWidthFraction, regionHeightFraction);
+    return selected != null ? supported.get(sizes.indexOf(selected)) : null;
+  }
+
+  private void reportMetrics() {
+    if (mMetricsListener != null) {
+      mMetricsListener.onMetrics(mMetrics.drain());
+    }
+  }
+
+  /** Hit rate and decode time per format, for comparing adaptive and full scanning. */
+  public DecodeStatistics getDecodeStatistics() {
+    return mFrameDecoder.getStatistics();
+  }
+
   private void setupLayout() {
     mViewFinderView = new ViewFinderView(getContext());
     mViewFinderView.setVisibility(View.INVISIBLE);
     mCameraView = new CameraView(getContext());
     mCameraView.setPreviewCallback(this);
+    mCameraView.setPreviewBufferCount(DEFAULT_PREVIEW_BUFFER_COUNT);
+    mCameraView.setAutoFocusCallback(new Camera.AutoFocusCallback() {
+      @Override
+      public void onAutoFocus(boolean success, Camera camera) {
+        mFocusController.onFocusComplete(success, System.nanoTime());
+      }
+    });
     addView(mCameraView);
-//    addView(mViewFinderView);
+    addView(mViewFinderView);
   }
 
   private void initMultiFormatReader() {
+    mFrameDecoder = new FrameDecoder(buildHints());
+    mPreviewSizeSelector.setFormats(mFormats);
+  }
+
+  private Map<DecodeHintType, Object> buildHints() {
     Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
-    hints.put(DecodeHintType.POSSIBLE_FORMATS, ALL_FORMATS);
-    mMultiFormatReader = new MultiFormatReader();
-    mMultiFormatReader.setHints(hints);
+    hints.put(DecodeHintType.POSSIBLE_FORMATS, mFormats);
+    if (isTryHarder) {
+      hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+    }
+    if (mCharacterSet != null) {
+      hints.put(DecodeHintType.CHARACTER_SET, mCharacterSet);
+    }
+    if (isAssumeGs1) {
+      hints.put(DecodeHintType.ASSUME_GS1, Boolean.TRUE);
+    }
+    return hints;
   }
 
+  /** Rebuilds the readers with the current settings; the camera keeps running. */
+  private void updateHints() {
+    mFrameDecoder.setHints(buildHints());
+    mPreviewSizeSelector.setFormats(mFormats);
+    if (isScanOrientedPreviewSize) {
+      mCameraView.requestLayout();
+    }
+  }
+
+  private void initDecodePipeline() {
+    mDecodePipeline = new DecodePipeline(mFrameDecoder,
+        new DecodePipeline.Listener() {
+          @Override
+          public void onResult(Result rawResult) {
+            mExposureController.onCodeSeen(System.nanoTime());
+            if (isPauseOnResult && !isContinuousScanning) {
+              pauseDecoding();
+            }
+            if (mResultHandler != null) {
+              mResultHandler.handleResult(rawResult);
+            }
+          }
+
+          @Override
+          public void onFrameReleased(PreviewFrame frame) {
+            mCameraView.recyclePreviewBuffer(frame.getData());
+          }
+        },
+        new Executor() {
+          private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+          @Override
+          public void execute(Runnable runnable) {
+            mMainHandler.post(runnable);
+          }
+        });
+  }
+
+  /**
+   * Opens the camera and starts scanning, with decoding resumed if it was paused. Pair with
+   * {@link #stop()} in the lifecycle of the host; between scans, {@link #pauseDecoding()} is much
+   * cheaper.
+   */
   public void start() {
     if (isOpen) {
       return;
     }
     isOpen = true;
+    isDecodingPaused = false;
+    // A barcode from the last session says nothing about where the next one will be.
+    mFrameDecoder.getRegionTracker().clear();
+    if (isParallelDecoding) {
+      startParallelExecutor();
+    }
+    mDecodePipeline.start();
+    if (mMetricsListener != null) {
+      // Time spent stopped does not belong to the first report.
+      mMetrics.drain();
+      postDelayed(mMetricsReporter, mMetricsIntervalMillis);
+    }
+    if (isPreviewSizeTuning) {
+      mPreviewSizeTuner.reset();
+      mPreviewSizeSelector.setDensityScale(mPreviewSizeTuner.getScale());
+      postDelayed(mPreviewSizeTuning, PREVIEW_SIZE_TUNING_INTERVAL_MILLIS);
+    }
+    mFocusController.reset();
+    mFocusAreaRect = null;
+    mExposureController.reset();
     mCameraView.onResume();
-    mViewFinderView.setVisibility(View.VISIBLE);
+    if (isCropToViewFinder) {
+      mViewFinderView.setVisibility(View.VISIBLE);
+    }
   }
 
+  /** Stops scanning and closes the camera, or keeps it warm, see {@link #setWarmCameraTimeout}. */
   public void stop() {
     if (!isOpen) {
       return;
     }
     isOpen = false;
+    mDecodePipeline.stop();
+    removeCallbacks(mMetricsReporter);
+    reportMetrics();
+    removeCallbacks(mPreviewSizeTuning);
+    stopParallelExecutor();
+    // Closing the camera cancels a focus run in progress; its result is never delivered.
+    mFocusController.reset();
+    // Likewise, the torch goes off and exposure unlocks with the camera.
+    mExposureController.reset();
     mCameraView.onPause();
     mViewFinderView.setVisibility(View.INVISIBLE);
   }
 
+  /**
+   * Stops handing preview frames to the decoder while the camera and the preview keep running.
+   * Results of frames still being decoded are dropped. Use it between scans instead of
+   * {@link #stop()} and {@link #start()}, which close and reopen the camera.
+   */
+  public void pauseDecoding() {
+    if (isDecodingPaused) {
+      return;
+    }
+    isDecodingPaused = true;
+    mDecodePipeline.stop();
+  }
+
+  /** Decodes again from the next preview frame on. */
+  public void resumeDecoding() {
+    if (!isDecodingPaused) {
+      return;
+    }
+    isDecodingPaused = false;
+    mFrameDecoder.getRegionTracker().clear();
+    if (isOpen) {
+      mDecodePipeline.start();
+    }
+  }
+
+  public boolean isDecodingPaused() {
+    return isDecodingPaused;
+  }
+
+  /**
+   * When enabled, outside continuous scanning, decoding pauses by itself as each result is
+   * delivered, as if {@link #pauseDecoding()} had been called just before
+   * {@link ResultHandler#handleResult(Result)}; call {@link #resumeDecoding()} for the next scan.
+   */
+  public void setPauseOnResult(boolean pauseOnResult) {
+    isPauseOnResult = pauseOnResult;
+  }
+
   public void autoFocus() {
     mCameraView.autoFocus();
   }
 
+  /**
+   * Returns how many frames or results have been dropped at the given stage of the decode
+   * pipeline since this component was created.
+   */
+  public long getDroppedFrameCount(DecodePipeline.Stage stage) {
+    return mDecodePipeline.getDroppedFrameCount(stage);
+  }
+
+  @Override
+  protected void onDetachedFromWindow() {
+    super.onDetachedFromWindow();
+    mDecodePipeline.shutdown();
+    stopParallelExecutor();
+  }
+
+  @Override
+  protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+    super.onSizeChanged(w, h, oldw, oldh);
+    invalidateFramingRectInPreview();
+  }
+
+  /**
+   * When enabled, only the part of the preview inside the view finder rectangle is decoded and the
+   * view finder is shown while scanning. Otherwise the whole visible preview is decoded.
+   */
+  public void setCropToViewFinder(boolean cropToViewFinder) {
+    isCropToViewFinder = cropToViewFinder;
+    invalidateFramingRectInPreview();
+    if (isScanOrientedPreviewSize) {
+      mCameraView.requestLayout();
+    }
+    if (isOpen) {
+      mViewFinderView.setVisibility(cropToViewFinder ? View.VISIBLE : View.INVISIBLE);
+    }
+  }
+
   @Override
   public void onPreviewFrame(byte[] bytes, Camera camera) {
-    Camera.Parameters parameters = camera.getParameters();
-    Camera.Size size = parameters.getPreviewSize();
-    int width = size.width;
-    int height = size.height;
+    // Camera.getParameters() flattens and parses every parameter, far too slow for each frame.
+    FrameDescriptor descriptor = mCameraView.getFrameDescriptor();
+    Rect rect = null;
 
+    // A short buffer holds a frame of a preview size that has just been replaced.
+    if (descriptor != null && bytes.length >= descriptor.getBufferSize()) {
+      rect = getFramingRectInPreview(descriptor.getWidth(), descriptor.getHeight());
+    }
 
-    if (DisplayUtils.getScreenOrientation(getContext()) == Configuration.ORIENTATION_PORTRAIT) {
-      byte[] rotatedData = new byte[bytes.length];
-      for (int y = 0; y < height; y++) {
-        for (int x = 0; x < width; x++) {
-          rotatedData[x * height + height - y - 1] = bytes[x + y * width];
-        }
+    if (rect != null && !isDecodingPaused) {
+      if (sVerboseLogging) {
+        Log.v(TAG, "onPreviewFrame width : " + rect.width() + ", height : " + rect.height());
+      }
+
+      PreviewFrame frame = new PreviewFrame(bytes,
+          descriptor.getWidth(),
+          descriptor.getHeight(),
+          getPreviewRotation(),
+          false,
+          rect.left,
+          rect.top,
+          rect.width(),
+          rect.height());
+      // Sampled once, for focus, exposure and the quality gate alike.
+      FrameQualityGate.Sample sample = isAutoFocus || isAutoTorch || isQualityGateEnabled
+          ? mQualityGate.sample(frame) : null;
+      if (isAutoFocus) {
+        controlFocus(frame, rect, sample);
+      }
+      if (isAutoTorch || isExposureLockOnCode) {
+        double luminance = isAutoTorch ? sample.getLuminance() : 0;
+        mExposureController.onFrame(luminance, System.nanoTime());
       }
-      int tmp = width;
-      width = height;
-      height = tmp;
-      bytes = rotatedData;
-    }
-
-    Log.d(TAG,String.format("onPreviewFrame width : %d, height : %d",width, height));
-
-    int centerX = width / 2;
-    int centerY = height / 2;
-    int viewCenterX = getWidth() / 2;
-    int viewCenterY = getHeight() / 2;
-
-    Result rawResult = null;
-    PlanarYUVLuminanceSource source = null;
-    source = new PlanarYUVLuminanceSource(bytes,
-        width,
-        height,
-        centerX - viewCenterX,
-        centerY - viewCenterY,
-        width,
-        mCameraView.getHeight(),
-        false);
-
-//    source = buildLuminanceSource(source.getMatrix(),
-//        source.getWidth(),
-//        source.getHeight());
-
-    if (source != null) {
-      BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-      try {
-        rawResult = mMultiFormatReader.decodeWithState(bitmap);
-      } catch (ReaderException re) {
-        // continue
-      } catch (NullPointerException npe) {
-        // This is terrible
-      } catch (ArrayIndexOutOfBoundsException aoe) {
-
-      } finally {
-        mMultiFormatReader.reset();
+      if (isQualityGateEnabled
+          && mQualityGate.check(sample, mCameraView.isAutoFocusing()) != null) {
+        mCameraView.recyclePreviewBuffer(bytes);
+      } else {
+        mDecodePipeline.submit(frame);
       }
+    } else {
+      // Not laid out yet, a stale frame, or decoding paused.
+      mCameraView.recyclePreviewBuffer(bytes);
     }
 
-    if (rawResult != null && mResultHandler != null) {
-      mResultHandler.handleResult(rawResult);
+    if (!mCameraView.usesPreviewBuffers() && mCameraView.isAutoFocusAvailable()){
+      camera.setOneShotPreviewCallback(this);
     }
+  }
 
-    if (mCameraView.isAutoFocusAvailable()){
-      camera.setOneShotPreviewCallback(this);
+  private void controlFocus(PreviewFrame frame, Rect rect, FrameQualityGate.Sample sample) {
+    if (rect != mFocusAreaRect) {
+      mFocusAreaRect = rect;
+      if (isCropToViewFinder) {
+        // Focus areas are given in the orientation of the sensor, as the frames are delivered.
+        RotatedLuminanceSource window = new RotatedLuminanceSource(frame.getData(),
+            frame.getWidth(), frame.getHeight(), frame.getRotation(), frame.isMirrored(),
+            rect.left, rect.top, rect.width(), rect.height(), null);
+        mCameraView.setFocusArea(new Rect(window.getDataLeft(), window.getDataTop(),
+            window.getDataLeft() + window.getDataWindowWidth(),
+            window.getDataTop() + window.getDataWindowHeight()));
+      } else {
+        mCameraView.setFocusArea(null);
+      }
     }
+    mFocusController.onFrame(sample.getSharpness(), System.nanoTime());
   }
 
-  public PlanarYUVLuminanceSource buildLuminanceSource(byte[] data, int width, int height) {
+  public LuminanceSource buildLuminanceSource(byte[] data, int width, int height) {
     Rect rect = getFramingRectInPreview(width, height);
     if (rect == null) {
       return null;
     }
-    // Go ahead and assume it's YUV rather than die.
-    PlanarYUVLuminanceSource source = null;
-
-    try {
-      source = new PlanarYUVLuminanceSource(data, width, height, rect.left, rect.top,
-          rect.width(), rect.height(), false);
-    } catch (Exception e) {
-    }
-
-    return source;
+    return new RotatedLuminanceSource(data, width, height, getPreviewRotation(), false,
+        rect.left, rect.top, rect.width(), rect.height(), new YPlaneRotator());
   }
 
+  /**
+   * Returns the region of a {@code width} x {@code height} preview frame to decode, in the
+   * coordinates of the frame once it has been rotated upright, or null if the views have not been
+   * laid out yet. This is the view finder rectangle when {@link #setCropToViewFinder(boolean)} is
+   * enabled and the visible part of the preview otherwise.
+   */
   public synchronized Rect getFramingRectInPreview(int width, int height) {
-    if (mFramingRectInPreview == null) {
-      Rect framingRect = mViewFinderView.getFramingRect();
+    if (!mCameraView.getPreviewBounds(mPreviewBounds)) {
+      return null;
+    }
+    mPreviewBounds.offset(mCameraView.getLeft(), mCameraView.getTop());
+
+    int rotation = getPreviewRotation();
+    if (mFramingRectInPreview != null
+        && width == mFramingRectPreviewWidth
+        && height == mFramingRectPreviewHeight
+        && rotation == mFramingRectRotation
+        && mPreviewBounds.equals(mFramingRectPreviewBounds)) {
+      return mFramingRectInPreview;
+    }
+
+    Rect framingRect;
+    if (isCropToViewFinder) {
+      framingRect = mViewFinderView.getFramingRect();
       if (framingRect == null) {
         return null;
       }
-      Rect rect = new Rect(framingRect);
-      Point screenResolution = DisplayUtils.getScreenResolution(getContext());
-      Point cameraResolution = new Point(width, height);
+    } else {
+      framingRect = new Rect(0, 0, getWidth(), getHeight());
+    }
 
-      if (cameraResolution == null || screenResolution == null) {
-        // Called early, before init even finished
-        return null;
-      }
+    boolean swap = rotation == 90 || rotation == 270;
+    mFramingRectInPreview = mapToPreview(framingRect, mPreviewBounds,
+        swap ? height : width,
+        swap ? width : height,
+        mCameraView.isFacingFront());
+    mFramingRectPreviewWidth = width;
+    mFramingRectPreviewHeight = height;
+    mFramingRectRotation = rotation;
+    mFramingRectPreviewBounds.set(mPreviewBounds);
+    return mFramingRectInPreview;
+  }
+
+  private synchronized void invalidateFramingRectInPreview() {
+    mFramingRectInPreview = null;
+  }
 
-      rect.left = rect.left * cameraResolution.x / screenResolution.x;
-      rect.right = rect.right * cameraResolution.x / screenResolution.x;
-      rect.top = rect.top * cameraResolution.y / screenResolution.y;
-      rect.bottom = rect.bottom * cameraResolution.y / screenResolution.y;
+  /**
+   * Clockwise rotation that turns a preview frame into what the user sees, apart from the mirroring
+   * applied to front-facing cameras.
+   */
+  private int getPreviewRotation() {
+    int displayOrientation = Math.max(mCameraView.getDisplayOrientation(), 0);
+    // A front-facing preview is mirrored before it is rotated, and mirroring reverses the direction
+    // of the rotation.
+    return mCameraView.isFacingFront() ? (360 - displayOrientation) % 360 : displayOrientation;
+  }
 
-      mFramingRectInPreview = rect;
+  /**
+   * Maps {@code rect}, in view coordinates, onto an upright preview frame of
+   * {@code uprightWidth} x {@code uprightHeight} that is drawn scaled into {@code previewBounds}.
+   * The result is clipped to the frame, or null if nothing is left of it.
+   */
+  static Rect mapToPreview(Rect rect, Rect previewBounds, int uprightWidth, int uprightHeight,
+      boolean mirrored) {
+    int left = (rect.left - previewBounds.left) * uprightWidth / previewBounds.width();
+    int right = (rect.right - previewBounds.left) * uprightWidth / previewBounds.width();
+    int top = (rect.top - previewBounds.top) * uprightHeight / previewBounds.height();
+    int bottom = (rect.bottom - previewBounds.top) * uprightHeight / previewBounds.height();
+
+    if (mirrored) {
+      int mirroredLeft = uprightWidth - right;
+      right = uprightWidth - left;
+      left = mirroredLeft;
     }
-    return mFramingRectInPreview;
+
+    Rect mapped = new Rect(Math.max(left, 0), Math.max(top, 0),
+        Math.min(right, uprightWidth), Math.min(bottom, uprightHeight));
+    return mapped.isEmpty() ? null : mapped;
   }
 
   public interface ResultHandler {
@@ -39,11 +39,10 @@ public class MainActivity extends Activity implements ZXingComponent.ResultHandl
   @Override
   public void handleResult(Result rawResult) {
     Log.e(TAG, "Result : " + rawResult.getText());
-    mZXingComponent.stop();
-//    mZXingComponent.start();
+    mZXingComponent.pauseDecoding();
   }
 
   public void onClick(View view){
-    mZXingComponent.start();
+    mZXingComponent.resumeDecoding();
   }
 }